@@ -0,0 +1,52 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.util.BitSet;
+
+/**
+ * Describes how a board differs from one a ProbabilityTable has already been built for,
+ * so that only the affected parts of the table need to be recalculated.
+ * @see ProbabilityTable#withChange(Board, BoardChange, int)
+ */
+public final class BoardChange {
+	private final BitSet spaces; //null if everything has changed
+	
+	/**
+	 * Returns a change to the behavior of particular spaces: their type, the cards in 
+	 * their deck or where they send a player.
+	 * @param spaceIDs the IDs of every space which has changed
+	 * @return the change
+	 */
+	public static final BoardChange spaces(int... spaceIDs) {
+		BitSet spaces = new BitSet();
+		for (int id : spaceIDs)
+			spaces.set(id);
+		return new BoardChange(spaces);
+	}
+	
+	/**
+	 * Returns a change which may affect every turn, such as a change to the dice or to 
+	 * the number of turns in jail. Tables are rebuilt in full for such changes.
+	 * @return the change
+	 */
+	public static final BoardChange everything() {
+		return new BoardChange(null);
+	}
+	
+	private BoardChange(BitSet spaces) {
+		this.spaces = spaces;
+	}
+	
+	/**
+	 * @return whether the whole table must be rebuilt
+	 */
+	/*package*/ final boolean isEverything() {
+		return spaces == null;
+	}
+	
+	/**
+	 * @return the IDs of the changed spaces, which must not be modified
+	 */
+	/*package*/ final BitSet spaces() {
+		return spaces;
+	}
+}
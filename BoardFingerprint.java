@@ -0,0 +1,122 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import com.benpochily.monopoly.board.Board;
+import com.benpochily.monopoly.board.deck.Card;
+import com.benpochily.monopoly.board.space.CardSpace;
+import com.benpochily.monopoly.board.space.Space;
+import com.benpochily.monopoly.board.space.SpaceType;
+import com.benpochily.monopoly.game.Dice;
+
+/**
+ * An immutable summary of everything about a board which affects its probabilities:
+ * the type of each space, where each card sends a player, the distribution of dice
+ * rolls and the jail rules. Two boards with equal fingerprints produce identical
+ * ProbabilityTables, so the fingerprint can be used as a cache key.
+ */
+/*package*/ final class BoardFingerprint {
+	private static final int GLOBALS = 5; //the entries of structure before the first space's
+	
+	private final int[] structure;
+	private final int[] spaceStarts; //the index in structure of each space's first entry
+	private final double[] rolls;
+	private final int hash;
+	
+	/**
+	 * Returns the fingerprint of a board
+	 * @param board the board
+	 * @return the fingerprint
+	 */
+	public static final BoardFingerprint of(Board board) {
+		List<Integer> structure = new ArrayList<Integer>();
+		structure.add(board.physicalSize());
+		structure.add(board.maxTurnsInJail());
+		structure.add(Dice.maxDoubles());
+		structure.add(board.jail().ID());
+		structure.add(board.jail().justVisiting().ID());
+		int[] spaceStarts = new int[board.physicalSize()];
+		for (int i = 0; i < board.physicalSize(); i++) {
+			spaceStarts[i] = structure.size();
+			Space space = board.getSpace(i);
+			structure.add(space.type().ordinal());
+			if (space.type() == SpaceType.CARD) {
+				/* Cards are drawn uniformly, so only the multiset of destinations matters,
+				 * not which card is which or the order of the deck. */
+				CardSpace cardSpace = (CardSpace) space;
+				int[] destinations = new int[cardSpace.getDeck().size()];
+				int c = 0;
+				for (Card card : cardSpace.getDeck())
+					destinations[c++] = card.applyCard(cardSpace).ID();
+				Arrays.sort(destinations);
+				structure.add(destinations.length);
+				for (int destination : destinations)
+					structure.add(destination);
+			}
+		}
+		
+		RollDistribution distribution = new RollDistribution(board.dice());
+		double[] rolls = new double[distribution.size() * 3];
+		for (int i = 0; i < distribution.size(); i++) {
+			rolls[i * 3] = distribution.total(i);
+			rolls[i * 3 + 1] = distribution.isDoubles(i) ? 1 : 0;
+			rolls[i * 3 + 2] = distribution.probability(i);
+		}
+		
+		return new BoardFingerprint(structure.stream().mapToInt(Integer::intValue).toArray(), spaceStarts, rolls);
+	}
+	
+	private BoardFingerprint(int[] structure, int[] spaceStarts, double[] rolls) {
+		this.structure = structure;
+		this.spaceStarts = spaceStarts;
+		this.rolls = rolls;
+		hash = 31 * Arrays.hashCode(structure) + Arrays.hashCode(rolls);
+	}
+	
+	/**
+	 * Returns the spaces whose behavior differs between the board of this fingerprint
+	 * and the board of another, suitable for BoardChange.spaces
+	 * @param other the fingerprint of the other board
+	 * @return the IDs of the differing spaces, or null if the boards differ in their size,
+	 * dice or jail rules, so that every turn may be affected
+	 */
+	public final BitSet changedSpaces(BoardFingerprint other) {
+		if (!rangeEquals(structure, 0, GLOBALS, other.structure, 0, GLOBALS) || !Arrays.equals(rolls, other.rolls))
+			return null;
+		BitSet changed = new BitSet();
+		for (int i = 0; i < spaceStarts.length; i++) {
+			int end = i + 1 < spaceStarts.length ? spaceStarts[i + 1] : structure.length;
+			int otherEnd = i + 1 < spaceStarts.length ? other.spaceStarts[i + 1] : other.structure.length;
+			if (!rangeEquals(structure, spaceStarts[i], end, other.structure, other.spaceStarts[i], otherEnd))
+				changed.set(i);
+		}
+		return changed;
+	}
+	
+	private static boolean rangeEquals(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo) {
+		if (aTo - aFrom != bTo - bFrom)
+			return false;
+		for (int i = 0; i < aTo - aFrom; i++)
+			if (a[aFrom + i] != b[bFrom + i])
+				return false;
+		return true;
+	}
+	
+	@Override
+	public final boolean equals(Object o) {
+		if (this == o)
+			return true;
+		if (!(o instanceof BoardFingerprint))
+			return false;
+		BoardFingerprint other = (BoardFingerprint) o;
+		return hash == other.hash && Arrays.equals(structure, other.structure) && Arrays.equals(rolls, other.rolls);
+	}
+	
+	@Override
+	public final int hashCode() {
+		return hash;
+	}
+}
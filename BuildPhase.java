@@ -0,0 +1,13 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+/**
+ * The phases of building a ProbabilityTable, as reported to a ProbabilityTableListener
+ */
+public enum BuildPhase {
+	/** Memoizing the outcome of rolling from each space with each number of doubles */
+	FORWARD_DISTRIBUTIONS,
+	/** Walking the move tree from every space to build both transition tables */
+	TRANSITION_TABLES,
+	/** Solving both transition tables for their steady states */
+	STEADY_STATES
+}
@@ -0,0 +1,98 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Scratch space for building tables, kept per thread and reused from one build to the next,
+ * so building many tables (for instance when sweeping rule variants) doesn't allocate a fresh
+ * accumulator for every move tree or fresh working matrices for every table. Only the results 
+ * of a build are newly allocated. Since there is one workspace per thread, the number of 
+ * workspaces is bounded by the threads which build tables, such as the threads of a ForkJoinPool.
+ * 
+ * A workspace is held from acquire() until it is closed, and nothing obtained from it may be
+ * kept after that. A thread can run a task while another of its tasks holds a workspace, as a
+ * ForkJoinPool worker does when it runs queued tasks while waiting to join; acquire() then hands
+ * the nested task a workspace of its own, so buffers are never shared. A task must not obtain
+ * the same buffer twice from one workspace.
+ */
+/*package*/ final class CalculationWorkspace implements AutoCloseable {
+	/**
+	 * The number of scratch buffers in each workspace
+	 */
+	public static final int SCRATCH_BUFFERS = 3;
+	
+	//the workspaces of each thread, one for each level of nesting it has reached
+	private static final ThreadLocal<List<CalculationWorkspace>> workspaces = ThreadLocal.withInitial(ArrayList::new);
+	
+	private ProbAccumulator accumulator;
+	private final double[][] scratch = new double[SCRATCH_BUFFERS][];
+	private boolean held; //only accessed by the thread owning the workspace
+	
+	private CalculationWorkspace() {
+	}
+	
+	/**
+	 * Returns a workspace of the calling thread which no other task holds, to be closed when
+	 * the calling task is done with it
+	 * @return the workspace
+	 */
+	public static final CalculationWorkspace acquire() {
+		List<CalculationWorkspace> owned = workspaces.get();
+		for (CalculationWorkspace workspace : owned) {
+			if (!workspace.held) {
+				workspace.held = true;
+				return workspace;
+			}
+		}
+		CalculationWorkspace workspace = new CalculationWorkspace();
+		workspace.held = true;
+		owned.add(workspace);
+		return workspace;
+	}
+	
+	/**
+	 * Returns this workspace to its thread, to be reused by the next task to acquire one
+	 */
+	@Override
+	public final void close() {
+		held = false;
+	}
+	
+	/**
+	 * Discards the workspaces of the calling thread, so their buffers can be collected.
+	 * Must not be called while the thread holds a workspace.
+	 */
+	public static final void release() {
+		workspaces.remove();
+	}
+	
+	/**
+	 * Returns this workspace's accumulator, with every probability reset to zero
+	 * @param size the number of spaces, including jail states, on the board
+	 * @param summation how the accumulator should add up probabilities
+	 * @return the accumulator
+	 */
+	public final ProbAccumulator accumulator(int size, Summation summation) {
+		if (accumulator == null || accumulator.size() != size || accumulator.summation() != summation)
+			accumulator = new ProbAccumulator(size, summation);
+		else
+			accumulator.reset();
+		return accumulator;
+	}
+	
+	/**
+	 * Returns one of this workspace's scratch buffers, growing it if necessary
+	 * @param buffer which buffer, from 0 to SCRATCH_BUFFERS - 1
+	 * @param length the number of elements needed
+	 * @return a buffer of at least length elements, whose first length elements are zero
+	 */
+	public final double[] scratch(int buffer, int length) {
+		if (scratch[buffer] == null || scratch[buffer].length < length)
+			scratch[buffer] = new double[length];
+		else
+			Arrays.fill(scratch[buffer], 0, length, 0.0);
+		return scratch[buffer];
+	}
+}
@@ -1,22 +1,50 @@
 package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import com.benpochily.monopoly.board.deck.Card;
 import com.benpochily.monopoly.board.deck.Deck;
 import com.benpochily.monopoly.board.space.CardSpace;
-import com.benpochily.monopoly.board.space.Space;
 
 /**
  * A ProbSpace which represents a Chance or Community Chest space
  */
 /*package*/ final class CardProbSpace extends ProbSpace {
+	/*
+	 * The outcomes of drawing a card here, worked out once on construction.
+	 * Cards which send the player to the same space are merged, so destinations holds
+	 * each distinct destination ID once and weights the probability of drawing a card
+	 * which leads there.
+	 */
+	private final int[] destinations;
+	private final double[] weights;
+	
+	//for walks with the deck position in the state: the deck, and the destination of each of its cards in order
 	private final Deck deck;
-	private final CardSpace space;
+	private final int[] drawDestinations;
 	
 	//do not use, use static factory in ProbSpace
 	CardProbSpace(CardSpace space, ProbBoard board) {
 		super(space, board);
-		this.space = space;
-		this.deck = space.getDeck();
+		deck = space.getDeck();
+		drawDestinations = new int[deck.size()];
+		Map<Integer, Integer> counts = new LinkedHashMap<Integer, Integer>();
+		int position = 0;
+		for (Card c : deck) {
+			int destination = c.applyCard(space).ID();
+			drawDestinations[position++] = destination;
+			counts.merge(destination, 1, Integer::sum);
+		}
+		
+		destinations = new int[counts.size()];
+		weights = new double[counts.size()];
+		int i = 0;
+		for (Map.Entry<Integer, Integer> e : counts.entrySet()) {
+			destinations[i] = e.getKey();
+			weights[i] = (double) e.getValue() / deck.size();
+			i++;
+		}
 	}	
 	
 	/**
@@ -24,21 +52,59 @@ import com.benpochily.monopoly.board.space.Space;
 	 * which may send us elsewhere on the board and influence probabilities
 	 */
 	@Override
-	protected final void updateProbAndRoll(int numDoubles, double multiplier, boolean rollAgain) {		
-		/*this loop cycles through each card in the deck
-		 * and applies its action, which may involve moving us to
-		 * another space.
+	protected final void updateProbAndRoll(ProbAccumulator acc, int numDoubles, double multiplier, boolean rollAgain) {		
+		/*this loop cycles through each distinct outcome of drawing a card,
+		 * which may involve moving us to another space.
 		 */
-		for (Card c : deck) {
-			Space destination = c.applyCard(space);			
+		acc.addNodes(destinations.length);
+		for (int i = 0; i < destinations.length; i++) {
 			/* If we haven't moved, we can let our parent handle it from here.
 			 * If we have moved, we continue from our new location. */
-			if (destination.equals(space)) 
-				super.updateProbAndRoll(numDoubles, multiplier / deck.size(), rollAgain);
+			if (destinations[i] == ID()) 
+				super.updateProbAndRoll(acc, numDoubles, multiplier * weights[i], rollAgain);
 			else {
-				addToMidProb(multiplier / deck.size());
-				board().getSpace(destination.ID()).updateProbAndRoll(numDoubles, multiplier / deck.size(), rollAgain);
+				addToMidProb(acc, multiplier * weights[i]);
+				board().getSpace(destinations[i]).updateProbAndRoll(acc, numDoubles, multiplier * weights[i], rollAgain);
 			}
 		}
 	}
+	
+	/**
+	 * @return the deck cards are drawn from here, which may be shared with other spaces
+	 */
+	public final Deck deck() {
+		return deck;
+	}
+	
+	/**
+	 * overrides walkDeckLanding in ProbSpace to draw the next card in the deck
+	 */
+	@Override
+	protected final void walkDeckLanding(DeckWalk walk, int deckState, int numDoubles, double multiplier, boolean rollAgain) {
+		int destination = drawDestinations[walk.position(deck, deckState)];
+		int drawn = walk.draw(deck, deckState);
+		if (destination == ID())
+			super.walkDeckLanding(walk, drawn, numDoubles, multiplier, rollAgain);
+		else {
+			walk.addToMidProb(ID(), drawn, multiplier);
+			board().getSpace(destination).walkDeckLanding(walk, drawn, numDoubles, multiplier, rollAgain);
+		}
+	}
+	
+	/**
+	 * overrides sampleLanding in ProbSpace to draw a random card
+	 */
+	@Override
+	protected final void sampleLanding(SampledTurn turn, int numDoubles, boolean rollAgain) {
+		double u = turn.random().nextDouble();
+		int i = 0;
+		while (i < destinations.length - 1 && (u -= weights[i]) >= 0)
+			i++;
+		if (destinations[i] == ID())
+			super.sampleLanding(turn, numDoubles, rollAgain);
+		else {
+			turn.addMid(ID());
+			board().getSpace(destinations[i]).sampleLanding(turn, numDoubles, rollAgain);
+		}
+	}
 }
@@ -0,0 +1,192 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.util.Arrays;
+
+import com.benpochily.monopoly.game.Dice;
+
+/**
+ * The rules of a ProbBoard compiled into flat arrays, so the move tree can be walked by one
+ * tight loop rather than by virtual calls through the ProbSpace hierarchy.
+ * 
+ * A roll is looked up in a table of the space reached by each roll outcome from each physical
+ * space, and the landing there is a short program: a list of operations, each adding a weight 
+ * times the program's multiplier to a space's mid or end probability, or rolling again from a 
+ * space through the board's memoized forward distributions. Each space has one landing program 
+ * for landing without doubles and one for landing with them, which resolve any card draws and
+ * Go To Jail. Starting a turn from each space, paying to leave jail and staying in jail are
+ * programs of their own. A program is compiled by walking its part of the move tree once, 
+ * through the ProbSpaces, with an accumulator that records rolls again instead of following 
+ * them, so the programs are derived from updateProbAndRoll rather than restating it. Branches 
+ * of a program reaching the same operation are merged.
+ * 
+ * The programs are not the only statement of the rules, though. Sampling a turn (sampleLanding)
+ * and walking deck states (walkDeckLanding) follow one outcome or one deck state at a time, so 
+ * they don't run from the programs; each ProbSpace restates its rule for them. The three are kept
+ * in agreement by tests against the exact table: MonteCarloSimulatorTest for sampling, and 
+ * DeckStateCalculatorTest for deck walks on boards with a single card per deck.
+ * 
+ * Nothing here depends on the jail strategy: a turn in jail is the leave program and the stay
+ * program weighted by the chance of leaving, so one compiled board serves every policy.
+ */
+/*package*/ final class CompiledBoard {
+	private static final byte MID = 0;
+	private static final byte END = 1;
+	private static final byte ROLL = 2;
+	
+	private final int physicalSize;
+	private final int size;
+	private final int jailID;
+	private final int lastDoubles; //the number of doubles after which rolling doubles goes to jail
+	
+	//the distinct roll outcomes, as in RollDistribution
+	private final double[] rollProbabilities;
+	private final boolean[] rollDoubles;
+	//the landing program reached by each roll outcome from each physical space, indexed [space * outcomes + outcome]
+	private final int[] rollLandings;
+	
+	/*
+	 * The programs, numbered: landing on each physical space without doubles, [0, physicalSize);
+	 * landing on each physical space with doubles, [physicalSize, 2 * physicalSize);
+	 * starting a turn from each space or paying to leave jail, [2 * physicalSize, 2 * physicalSize + size);
+	 * and staying in each jail state, [2 * physicalSize + size, 2 * physicalSize + 2 * size), empty for 
+	 * physical spaces. The operations of program p are [programStart[p], programStart[p + 1]) of ops, 
+	 * targets and weights.
+	 */
+	private final int[] programStart;
+	private final byte[] ops;
+	private final int[] targets;
+	private final double[] weights;
+	private final int[] programNodes; //move tree branches each program stands for, for instrumentation
+	
+	/**
+	 * Compiles a board. The board's spaces must have been created, but its forward 
+	 * distributions need not have been built.
+	 * @param board the board to compile
+	 */
+	public CompiledBoard(ProbBoard board) {
+		physicalSize = board.physicalSize();
+		size = board.size();
+		jailID = board.jail().ID();
+		lastDoubles = Math.max(Dice.maxDoubles() - 1, 0);
+		
+		RollDistribution rolls = board.rolls();
+		int outcomes = rolls.size();
+		rollProbabilities = new double[outcomes];
+		rollDoubles = new boolean[outcomes];
+		for (int i = 0; i < outcomes; i++) {
+			rollProbabilities[i] = rolls.probability(i);
+			rollDoubles[i] = rolls.isDoubles(i);
+		}
+		rollLandings = new int[physicalSize * outcomes];
+		for (int space = 0; space < physicalSize; space++)
+			for (int i = 0; i < outcomes; i++)
+				rollLandings[space * outcomes + i] = board.nextSpace(board.getSpace(space), rolls.total(i)).ID() + (rollDoubles[i] ? physicalSize : 0);
+		
+		int programs = 2 * physicalSize + 2 * size;
+		programStart = new int[programs + 1];
+		programNodes = new int[programs];
+		byte[] ops = new byte[3 * size];
+		int[] targets = new int[ops.length];
+		double[] weights = new double[ops.length];
+		int count = 0;
+		ProbAccumulator acc = ProbAccumulator.recordingRolls(size);
+		for (int p = 0; p < programs; p++) {
+			programStart[p] = count;
+			if (p >= 2 * physicalSize + size && p - 2 * physicalSize - size < physicalSize)
+				continue; //there's no staying in jail from a physical space
+			
+			acc.reset();
+			if (p < 2 * physicalSize) //the number of doubles rolled doesn't matter, since rolls again are only recorded
+				board.getSpace(p % physicalSize).updateProbAndRoll(acc, 0, 1.0, p >= physicalSize);
+			else if (p < 2 * physicalSize + size)
+				board.getSpace(p - 2 * physicalSize).getProbFrom(acc, JailPolicy.PAY_IMMEDIATELY);
+			else
+				board.getSpace(p - 2 * physicalSize - size).getProbFrom(acc, JailPolicy.STAY_FULL_TERM);
+			programNodes[p] = (int) acc.nodes();
+			if (ops.length < count + 3 * size) {
+				ops = Arrays.copyOf(ops, 2 * (count + 3 * size));
+				targets = Arrays.copyOf(targets, ops.length);
+				weights = Arrays.copyOf(weights, ops.length);
+			}
+			for (int i = 0; i < size; i++) {
+				count = addOperation(ops, targets, weights, count, MID, i, acc.midProb(i));
+				count = addOperation(ops, targets, weights, count, END, i, acc.endProb(i));
+				count = addOperation(ops, targets, weights, count, ROLL, i, acc.rollProb(i));
+			}
+		}
+		programStart[programs] = count;
+		this.ops = Arrays.copyOf(ops, count);
+		this.targets = Arrays.copyOf(targets, count);
+		this.weights = Arrays.copyOf(weights, count);
+	}
+	
+	// appends an operation unless its weight is zero, returning the new number of operations
+	private static int addOperation(byte[] ops, int[] targets, double[] weights, int count, byte op, int target, double weight) {
+		if (weight == 0.0)
+			return count;
+		ops[count] = op;
+		targets[count] = target;
+		weights[count] = weight;
+		return count + 1;
+	}
+	
+	/**
+	 * Rolls the dice from a physical space and walks every outcome one level deep: too many doubles
+	 * go to jail, and any other outcome runs the landing program of the space it reaches
+	 * @param board the board this was compiled from, whose forward distributions are used for rolls again
+	 * @param acc the accumulator to add probabilities to
+	 * @param spaceID the physical space being rolled from
+	 * @param numDoubles the number of doubles rolled so far this turn
+	 * @param multiplier the probability that this roll takes place
+	 */
+	public final void roll(ProbBoard board, ProbAccumulator acc, int spaceID, int numDoubles, double multiplier) {
+		int outcomes = rollProbabilities.length;
+		acc.addNodes(outcomes);
+		boolean doublesToJail = numDoubles >= lastDoubles;
+		for (int i = 0; i < outcomes; i++) {
+			if (doublesToJail && rollDoubles[i])
+				acc.addToEndProb(jailID, multiplier * rollProbabilities[i]);
+			else
+				run(board, acc, rollLandings[spaceID * outcomes + i], numDoubles + 1, multiplier * rollProbabilities[i]);
+		}
+	}
+	
+	/**
+	 * Walks every outcome of a turn from a space, as ProbSpace.getProbFrom does
+	 * @param board the board this was compiled from, whose forward distributions are used for rolls
+	 * @param acc the accumulator to add probabilities to
+	 * @param spaceID the space the turn starts from
+	 * @param policy how the player decides whether to pay to leave jail
+	 */
+	public final void turn(ProbBoard board, ProbAccumulator acc, int spaceID, JailPolicy policy) {
+		double leave = spaceID < physicalSize ? 1.0 : policy.leaveProbability(spaceID - physicalSize);
+		if (leave > 0.0)
+			run(board, acc, 2 * physicalSize + spaceID, 0, leave);
+		if (leave < 1.0)
+			run(board, acc, 2 * physicalSize + size + spaceID, 0, 1.0 - leave);
+	}
+	
+	/**
+	 * @return the number of operations in every program
+	 */
+	public final int operations() {
+		return ops.length;
+	}
+	
+	// the interpreter: rolls again are made with rollDoubles doubles rolled so far
+	private void run(ProbBoard board, ProbAccumulator acc, int program, int rollDoubles, double multiplier) {
+		acc.addNodes(programNodes[program]);
+		for (int k = programStart[program]; k < programStart[program + 1]; k++) {
+			switch (ops[k]) {
+			case MID:
+				acc.addToMidProb(targets[k], multiplier * weights[k]);
+				break;
+			case END:
+				acc.addToEndProb(targets[k], multiplier * weights[k]);
+				break;
+			default:
+				board.addForwardProb(acc, targets[k], rollDoubles, multiplier * weights[k]);
+			}
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import com.benpochily.monopoly.board.Board;
+import com.benpochily.monopoly.board.deck.Deck;
+
+/**
+ * Calculates probabilities with the cards drawn from each deck in order, without replacement,
+ * rather than at random. The position of every deck is part of the state of the Markov chain, 
+ * so the chain has size() * deckStates() states, where deckStates() is the product of the sizes
+ * of the distinct decks (decks shared by several spaces count once). 
+ * 
+ * The extended matrices are stored in compressed sparse rows, but everything else is dense over
+ * the extended states: each task walking turns holds a DeckWalk of that size, and each starting 
+ * space is propagated as dense extended vectors, and the lumped matrices are built dense, n by n,
+ * before being compressed. Time and memory therefore grow with the product
+ * of the deck sizes; a board of 43 states with two decks of 16 cards has 11,008 extended states. 
+ * Boards over MAX_STATES are rejected on construction, before anything of that size is allocated.
+ * 
+ * Per-space probabilities are recovered by lumping: summing the extended states of each space.
+ * Turns are calculated with the deck positions at the start uniformly distributed (every card
+ * equally likely to be next, as for a freshly shuffled deck), and the one-turn matrices are 
+ * lumped by weighting each deck state with its steady state probability.
+ * @see ProbabilityTable#makeDeckStateTable(Board, int, ForkJoinPool)
+ */
+/*package*/ final class DeckStateCalculator {
+	/**
+	 * The largest number of extended states a DeckStateCalculator will build a chain for
+	 */
+	public static final int MAX_STATES = 1 << 20;
+	
+	private final ProbBoard board;
+	private final ForkJoinPool pool;
+	private final Deck[] decks;
+	private final int deckStates;
+	//extended Markov and one-turn matrices for each jail strategy, indexed by stayInJail ? 1 : 0
+	private final SparseMatrix[] markov = new SparseMatrix[2];
+	private final SparseMatrix[] oneTurn = new SparseMatrix[2];
+	private final double[][] steadyState = new double[2][];
+	
+	/**
+	 * Constructs a new DeckStateCalculator and immediately builds and solves both extended chains
+	 * @param board The board for which probabilities should be calculated
+	 * @param pool The pool to calculate on, or null to calculate on this thread
+	 * @throws IllegalArgumentException if the board has more than MAX_STATES extended states
+	 */
+	public DeckStateCalculator(Board board, ForkJoinPool pool) {
+		this.board = ProbBoard.uncompiled(board);
+		this.pool = pool;
+		
+		Set<Deck> distinct = Collections.newSetFromMap(new IdentityHashMap<Deck, Boolean>());
+		for (int i = 0; i < this.board.size(); i++)
+			if (this.board.getSpace(i) instanceof CardProbSpace)
+				distinct.add(((CardProbSpace) this.board.getSpace(i)).deck());
+		decks = distinct.toArray(new Deck[distinct.size()]);
+		//multiplied out in long and checked as we go, so the check itself can't overflow
+		long states = this.board.size();
+		for (Deck deck : decks) {
+			states *= deck.size();
+			if (states > MAX_STATES)
+				throw new IllegalArgumentException("a board of " + this.board.size() + " states with " + decks.length 
+						+ " distinct decks has more than " + MAX_STATES + " extended states, too many to track every deck position");
+		}
+		deckStates = new DeckWalk(decks, 0).deckStates();
+		
+		for (int s = 0; s < 2; s++)
+			buildChain(s == 1);
+		ParallelTasks.runAll(pool, Arrays.<Runnable>asList(() -> solveSteadyState(false), () -> solveSteadyState(true)));
+	}
+	
+	/**
+	 * @return the number of combinations of deck positions
+	 */
+	public final int deckStates() {
+		return deckStates;
+	}
+	
+	/**
+	 * @return the number of spaces on the board plus the number of turns in jail
+	 */
+	public final int size() {
+		return board.size();
+	}
+	
+	/**
+	 * Returns a table of per-space probabilities, indexed as ProbabilityCalculator.getTable
+	 * @param depth How many turns in the future the table should be calculated for
+	 * @param stayInJail the jail strategy
+	 * @return the table
+	 * @throws IllegalArgumentException if the table would hold more than Integer.MAX_VALUE probabilities
+	 */
+	public final double[] getTable(int depth, boolean stayInJail) {
+		int n = board.size();
+		double[] result = new double[TableStorage.length(depth, n)];
+		SparseMatrix markovMatrix = markov[stayInJail ? 1 : 0];
+		SparseMatrix oneTurnMatrix = oneTurn[stayInJail ? 1 : 0];
+		
+		//each starting space is propagated separately, with its own pair of extended state vectors
+		List<Runnable> origins = new ArrayList<Runnable>();
+		for (int o = 0; o < n; o++) {
+			final int origin = o;
+			origins.add(() -> {
+				double[] current = new double[markovMatrix.size()];
+				double[] next = new double[markovMatrix.size()];
+				Arrays.fill(current, origin * deckStates, (origin + 1) * deckStates, 1.0 / deckStates);
+				for (int turn = 0; turn < depth; turn++) {
+					oneTurnMatrix.multiply(current, 0, next, 0);
+					lump(next, result, (turn * n + origin) * n);
+					markovMatrix.multiply(current, 0, next, 0);
+					double[] temp = current;
+					current = next;
+					next = temp;
+				}
+			});
+		}
+		ParallelTasks.runAll(pool, origins);
+		return result;
+	}
+	
+	/**
+	 * Returns the steady state probability of landing on each space
+	 * @param stayInJail the jail strategy
+	 * @return the probabilities, indexed by space ID
+	 */
+	public final double[] getSteadyState(boolean stayInJail) {
+		double[] landings = new double[markov[0].size()];
+		oneTurn[stayInJail ? 1 : 0].multiply(steadyState[stayInJail ? 1 : 0], 0, landings, 0);
+		double[] result = new double[board.size()];
+		lump(landings, result, 0);
+		return result;
+	}
+	
+	/**
+	 * Returns a per-space one-turn matrix lumped from an extended one, weighting the deck
+	 * states of each space by their steady state probability (or equally, for a space
+	 * with no steady state probability)
+	 * @param oneTurnMatrix true for the one-turn matrix, false for the Markov matrix
+	 * @param stayInJail the jail strategy
+	 * @return the lumped matrix
+	 */
+	public final SparseMatrix getLumpedMatrix(boolean oneTurnMatrix, boolean stayInJail) {
+		int n = board.size();
+		SparseMatrix extended = oneTurnMatrix ? oneTurn[stayInJail ? 1 : 0] : markov[stayInJail ? 1 : 0];
+		double[] pi = steadyState[stayInJail ? 1 : 0];
+		double[][] lumped = new double[n][n];
+		double[] weights = new double[extended.size()];
+		double[] row = new double[extended.size()];
+		for (int space = 0; space < n; space++) {
+			double total = 0;
+			for (int d = 0; d < deckStates; d++)
+				total += pi[space * deckStates + d];
+			Arrays.fill(weights, 0.0);
+			for (int d = 0; d < deckStates; d++)
+				weights[space * deckStates + d] = total > 0 ? pi[space * deckStates + d] / total : 1.0 / deckStates;
+			extended.multiply(weights, 0, row, 0);
+			lump(row, lumped[space], 0);
+		}
+		return SparseMatrix.fromDense(lumped);
+	}
+	
+	//sums the deck states of each space in an extended vector into result, from offset
+	private void lump(double[] extended, double[] result, int offset) {
+		for (int space = 0; space < board.size(); space++) {
+			double sum = 0;
+			for (int d = space * deckStates; d < (space + 1) * deckStates; d++)
+				sum += extended[d];
+			result[offset + space] = sum;
+		}
+	}
+	
+	// walks a turn from every extended state, in one task per space, and stores the extended matrices
+	private void buildChain(boolean stayInJail) {
+		int n = board.size();
+		int states = n * deckStates;
+		int[][] markovColumns = new int[states][];
+		double[][] markovValues = new double[states][];
+		int[][] oneTurnColumns = new int[states][];
+		double[][] oneTurnValues = new double[states][];
+		JailPolicy policy = JailPolicy.of(stayInJail);
+		
+		List<Runnable> spaces = new ArrayList<Runnable>();
+		for (int s = 0; s < n; s++) {
+			final int space = s;
+			spaces.add(() -> {
+				DeckWalk walk = new DeckWalk(decks, n);
+				for (int d = 0; d < deckStates; d++) {
+					int state = space * deckStates + d;
+					walk.reset();
+					board.getSpace(space).walkDeckFrom(walk, d, policy);
+					oneTurnColumns[state] = new int[walk.touched()];
+					oneTurnValues[state] = new double[walk.touched()];
+					int[] columns = new int[walk.touched()];
+					double[] values = new double[walk.touched()];
+					int ends = walk.copyTo(columns, values, oneTurnColumns[state], oneTurnValues[state]);
+					markovColumns[state] = Arrays.copyOf(columns, ends);
+					markovValues[state] = Arrays.copyOf(values, ends);
+				}
+			});
+		}
+		ParallelTasks.runAll(pool, spaces);
+		markov[stayInJail ? 1 : 0] = SparseMatrix.fromRows(markovColumns, markovValues);
+		oneTurn[stayInJail ? 1 : 0] = SparseMatrix.fromRows(oneTurnColumns, oneTurnValues);
+	}
+	
+	private void solveSteadyState(boolean stayInJail) {
+		/*
+		 * There's no dense copy of the extended chain, so it can only be solved by iteration.
+		 * Decks only advance when a card is drawn, so the deck positions settle far more slowly
+		 * than the spaces; aggregating by deck state corrects them directly.
+		 */
+		SparseMatrix matrix = markov[stayInJail ? 1 : 0];
+		int[] blocks = new int[matrix.size()];
+		for (int i = 0; i < blocks.length; i++)
+			blocks[i] = i % deckStates;
+		steadyState[stayInJail ? 1 : 0] = new AggregationSteadyStateSolver(blocks, deckStates).solve(null, matrix, null).distribution();
+	}
+}
@@ -0,0 +1,155 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.benpochily.monopoly.board.deck.Deck;
+
+/**
+ * Accumulates the probabilities of a move tree walked with the position of every deck as
+ * part of the state, for DeckStateCalculator. 
+ * 
+ * Each deck is drawn from in the order it iterates its cards, one card at a time, and the
+ * card drawn goes to the bottom. The positions of all the decks on a board are combined
+ * into a single deck state, with each deck as one digit of a mixed radix number, and each
+ * (space, deck state) pair is a state of the extended chain with ID space * deckStates() + deck state.
+ * 
+ * Like ProbAccumulator, each thread walking should have its own.
+ */
+/*package*/ final class DeckWalk {
+	private final Map<Deck, Integer> strides; //the place value of each deck's digit, by identity
+	private final int deckStates;
+	
+	private final double[] midProb;
+	private final double[] endProb;
+	//the IDs of the extended states with a nonzero probability, so clearing doesn't touch every state
+	private int[] touched = new int[64];
+	private int touchedCount;
+	private final boolean[] isTouched;
+	
+	/**
+	 * Constructs a new DeckWalk
+	 * @param decks the distinct decks on the board
+	 * @param size the number of spaces on the board, including jail states
+	 */
+	public DeckWalk(Deck[] decks, int size) {
+		strides = new IdentityHashMap<Deck, Integer>();
+		int stride = 1;
+		for (Deck deck : decks) {
+			strides.put(deck, stride);
+			stride = Math.multiplyExact(stride, deck.size());
+		}
+		deckStates = stride;
+		int states = Math.multiplyExact(size, deckStates);
+		midProb = new double[states];
+		endProb = new double[states];
+		isTouched = new boolean[states];
+	}
+	
+	/**
+	 * @return the number of combinations of deck positions
+	 */
+	public final int deckStates() {
+		return deckStates;
+	}
+	
+	/**
+	 * Returns the position of the next card to be drawn from a deck
+	 * @param deck the deck
+	 * @param deckState the positions of every deck
+	 * @return the position, from 0 to deck.size() - 1
+	 */
+	public final int position(Deck deck, int deckState) {
+		return deckState / strides.get(deck) % deck.size();
+	}
+	
+	/**
+	 * Returns the deck state after drawing a card from a deck
+	 * @param deck the deck
+	 * @param deckState the positions of every deck before drawing
+	 * @return the positions of every deck afterwards
+	 */
+	public final int draw(Deck deck, int deckState) {
+		int stride = strides.get(deck);
+		return position(deck, deckState) == deck.size() - 1 ? deckState - (deck.size() - 1) * stride : deckState + stride;
+	}
+	
+	/**
+	 * Adds to the probability of ending a turn on a space, with the decks in a given state
+	 * @param spaceID the ID of the space
+	 * @param deckState the positions of every deck
+	 * @param prob the probability to add
+	 */
+	public final void addToEndProb(int spaceID, int deckState, double prob) {
+		int state = touch(spaceID, deckState);
+		endProb[state] += prob;
+	}
+	
+	/**
+	 * Adds to the probability of landing on, but not ending on, a space, with the decks in a given state
+	 * @param spaceID the ID of the space
+	 * @param deckState the positions of every deck
+	 * @param prob the probability to add
+	 */
+	public final void addToMidProb(int spaceID, int deckState, double prob) {
+		int state = touch(spaceID, deckState);
+		midProb[state] += prob;
+	}
+	
+	/**
+	 * @return the number of extended states with a nonzero probability since the last reset
+	 */
+	public final int touched() {
+		return touchedCount;
+	}
+	
+	/**
+	 * Copies the probabilities accumulated since the last reset into a sparse row of the
+	 * extended Markov matrix and of the extended one-turn (Markov plus mid) matrix
+	 * @param markovColumns receives the columns of the Markov row, of length at least touched()
+	 * @param markovValues receives the values of the Markov row
+	 * @param oneTurnColumns receives the columns of the one-turn row, of length touched()
+	 * @param oneTurnValues receives the values of the one-turn row, of length touched()
+	 * @return the number of nonzero entries in the Markov row
+	 */
+	public final int copyTo(int[] markovColumns, double[] markovValues, int[] oneTurnColumns, double[] oneTurnValues) {
+		int ends = 0;
+		for (int i = 0; i < touchedCount; i++) {
+			int state = touched[i];
+			oneTurnColumns[i] = state;
+			oneTurnValues[i] = endProb[state] + midProb[state];
+			if (endProb[state] != 0.0) {
+				markovColumns[ends] = state;
+				markovValues[ends] = endProb[state];
+				ends++;
+			}
+		}
+		return ends;
+	}
+	
+	/**
+	 * Resets every probability to zero
+	 */
+	public final void reset() {
+		for (int i = 0; i < touchedCount; i++) {
+			int state = touched[i];
+			midProb[state] = 0.0;
+			endProb[state] = 0.0;
+			isTouched[state] = false;
+		}
+		touchedCount = 0;
+	}
+	
+	//returns the ID of an extended state, remembering that it has been touched
+	private int touch(int spaceID, int deckState) {
+		int state = spaceID * deckStates + deckState;
+		if (!isTouched[state]) {
+			isTouched[state] = true;
+			if (touchedCount == touched.length)
+				touched = Arrays.copyOf(touched, touchedCount * 2);
+			touched[touchedCount++] = state;
+		}
+		return state;
+	}
+}
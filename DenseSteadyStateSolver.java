@@ -0,0 +1,35 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * Finds the steady state by solving the full linear system
+ * x * (M - I) = 0, x1 + x2 + ... = 1 with a dense least-squares solve.
+ * Exact, but O(n^3) in the number of spaces.
+ */
+public final class DenseSteadyStateSolver implements SteadyStateSolver {
+
+	@Override
+	public final SteadyStateSolution solve(double[][] markovMatrix, SparseMatrix sparseMarkov, double[] initialGuess) {
+		int n = markovMatrix.length;
+		// build main part of matrix by translating Markov matrix and adjusting coefficients
+		SimpleMatrix toSolve = new SimpleMatrix(n + 1, n);
+		for (int i = 0; i < n; i++)
+			for (int j = 0; j < n; j++)
+				toSolve.set(i, j, i == j ? markovMatrix[j][i] - 1 : markovMatrix[j][i]);
+
+		// add final equation, a + b + c + d... = 1
+		for (int i = 0; i < n; i++)
+			toSolve.set(n, i, 1);
+
+		// right side of linear system
+		SimpleMatrix rightMatrix = new SimpleMatrix(n + 1, 1);
+		rightMatrix.set(n, 0, 1);
+
+		SimpleMatrix result = toSolve.solve(rightMatrix);
+		double[] distribution = new double[n];
+		for (int i = 0; i < n; i++)
+			distribution[i] = result.get(i, 0);
+		return new SteadyStateSolution(distribution, 0, sparseMarkov);
+	}
+}
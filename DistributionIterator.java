@@ -0,0 +1,55 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.util.Iterator;
+
+/**
+ * Iterates over the landing probabilities from a single starting space, one turn at a time,
+ * without building a full table. Each step multiplies a single row vector by the sparse
+ * one-turn matrices, so every turn costs at most O(size^2) time and O(size) memory.
+ * The iteration never ends; callers should stop after as many turns as they need.
+ */
+/*package*/ final class DistributionIterator implements Iterator<double[]> {
+	private final SparseMatrix markovMatrix;
+	private final SparseMatrix oneTurnMatrix;
+	/*
+	 * The probability of starting the next turn on each space
+	 * (the origin row of the Markov matrix raised to the number of turns so far)
+	 */
+	private double[] start;
+	private double[] next;
+	
+	/**
+	 * Constructs a new DistributionIterator
+	 * @param markovMatrix the one-turn transition matrix of end probabilities
+	 * @param oneTurnMatrix the one-turn transition matrix plus the one-turn matrix of mid probabilities
+	 * @param origin the ID of the starting space
+	 */
+	DistributionIterator(SparseMatrix markovMatrix, SparseMatrix oneTurnMatrix, int origin) {
+		this.markovMatrix = markovMatrix;
+		this.oneTurnMatrix = oneTurnMatrix;
+		start = new double[markovMatrix.size()];
+		next = new double[markovMatrix.size()];
+		start[origin] = 1.0;
+	}
+	
+	@Override
+	public final boolean hasNext() {
+		return true;
+	}
+	
+	/**
+	 * Returns the probability of landing on each space during the next turn.
+	 * The first call returns the probabilities for the current turn (turn 0 in a ProbabilityTable)
+	 * @return a new array, indexed by space ID
+	 */
+	@Override
+	public final double[] next() {
+		double[] result = new double[start.length];
+		oneTurnMatrix.multiply(start, 0, result, 0);
+		markovMatrix.multiply(start, 0, next, 0);
+		double[] temp = start;
+		start = next;
+		next = temp;
+		return result;
+	}
+}
@@ -0,0 +1,46 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.util.BitSet;
+
+/**
+ * TableStorage which keeps probabilities in a single double[]
+ */
+/*package*/ final class DoubleTableStorage extends TableStorage {
+	private final double[] table;
+	
+	//do not use, use static factory in TableStorage
+	DoubleTableStorage(double[] table, int depth, int size) {
+		super(depth, size);
+		this.table = table;
+	}
+	
+	@Override
+	public final double get(int turn, int origin, int destination) {
+		return table[index(turn, origin, destination)];
+	}
+	
+	@Override
+	public final void copyRow(int turn, int origin, double[] result, int offset) {
+		System.arraycopy(table, index(turn, origin, 0), result, offset, size());
+	}
+	
+	@Override
+	public final double dot(int turn, int origin, double[] weights) {
+		return dot(table, index(turn, origin, 0), weights);
+	}
+	
+	@Override
+	public final double sum(int turn, int origin, BitSet spaces) {
+		return sum(table, index(turn, origin, 0), spaces);
+	}
+	
+	@Override
+	public final long footprint() {
+		return (long) table.length * Double.BYTES;
+	}
+	
+	@Override
+	public final TablePrecision precision() {
+		return TablePrecision.DOUBLE;
+	}
+}
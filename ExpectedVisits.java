@@ -0,0 +1,58 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+/**
+ * The discounted expected number of landings on each space from each starting space, over
+ * every future turn: a landing x turns from now counts discount^x. With a discount below one
+ * this is the fundamental matrix of the Markov chain, (I - discount * M)^-1, times the one-turn
+ * matrix M + mid, and converges however far ahead the turns go.
+ * @see ProbabilityTable#getDiscountedVisits(double, boolean)
+ */
+public final class ExpectedVisits {
+	private final double discount;
+	private final int size;
+	private final double[] visits; //flat, indexed [origin * size + destination]
+	
+	/*package*/ ExpectedVisits(double discount, int size, double[] visits) {
+		this.discount = discount;
+		this.size = size;
+		this.visits = visits;
+	}
+	
+	/**
+	 * returns the discounted expected number of landings on destination by a player starting from origin
+	 * @param origin the id of the starting space
+	 * @param destination the id of the target space
+	 * @return the expected number of landings
+	 */
+	public final double get(int origin, int destination) {
+		return visits[origin * size + destination];
+	}
+	
+	/**
+	 * returns the sum of the discounted expected landings on each space from origin, each multiplied by 
+	 * that space's weight. With the rent of each space as its weight, this is the discounted expected rent.
+	 * @param origin the id of the starting space
+	 * @param weights a weight for each space, indexed by space id, of at least size() elements
+	 * @return the weighted sum
+	 */
+	public final double getWeightedSum(int origin, double[] weights) {
+		double sum = 0;
+		for (int d = 0; d < size; d++)
+			sum += visits[origin * size + d] * weights[d];
+		return sum;
+	}
+	
+	/**
+	 * @return the weight of a landing one turn later than another
+	 */
+	public final double discount() {
+		return discount;
+	}
+	
+	/**
+	 * @return the number of spaces on the board plus the number of turns in jail
+	 */
+	public final int size() {
+		return size;
+	}
+}
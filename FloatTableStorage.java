@@ -0,0 +1,68 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.util.BitSet;
+
+/**
+ * TableStorage which keeps probabilities in a single float[], using half the memory
+ * of DoubleTableStorage at the cost of precision (roughly seven significant digits)
+ */
+/*package*/ final class FloatTableStorage extends TableStorage {
+	private final float[] table;
+	
+	//do not use, use static factory in TableStorage
+	FloatTableStorage(double[] table, int depth, int size) {
+		super(depth, size);
+		this.table = new float[table.length];
+		for (int i = 0; i < table.length; i++)
+			this.table[i] = (float) table[i];
+	}
+	
+	@Override
+	public final double get(int turn, int origin, int destination) {
+		return table[index(turn, origin, destination)];
+	}
+	
+	@Override
+	public final void copyRow(int turn, int origin, double[] result, int offset) {
+		int start = index(turn, origin, 0);
+		for (int i = 0; i < size(); i++)
+			result[offset + i] = table[start + i];
+	}
+	
+	//as TableStorage.dot(double[], int, double[]), widening each value
+	@Override
+	public final double dot(int turn, int origin, double[] weights) {
+		int start = index(turn, origin, 0);
+		int n = size();
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		int i = 0;
+		for (; i + 3 < n; i += 4) {
+			s0 += table[start + i] * weights[i];
+			s1 += table[start + i + 1] * weights[i + 1];
+			s2 += table[start + i + 2] * weights[i + 2];
+			s3 += table[start + i + 3] * weights[i + 3];
+		}
+		for (; i < n; i++)
+			s0 += table[start + i] * weights[i];
+		return (s0 + s1) + (s2 + s3);
+	}
+	
+	@Override
+	public final double sum(int turn, int origin, BitSet spaces) {
+		int start = index(turn, origin, 0);
+		double sum = 0;
+		for (int i = spaces.nextSetBit(0); i >= 0 && i < size(); i = spaces.nextSetBit(i + 1))
+			sum += table[start + i];
+		return sum;
+	}
+	
+	@Override
+	public final long footprint() {
+		return (long) table.length * Float.BYTES;
+	}
+	
+	@Override
+	public final TablePrecision precision() {
+		return TablePrecision.FLOAT;
+	}
+}
@@ -18,7 +18,15 @@ import com.benpochily.monopoly.board.space.GoToSpace;
 	 * from here.
 	 */
 	@Override
-	public final void getProbFrom(boolean stayInJail) {
+	public final void getProbFrom(ProbAccumulator acc, JailPolicy policy) {
+		return;
+	}
+	
+	/**
+	 * Likewise, no turn can be played from here, so nothing is recorded
+	 */
+	@Override
+	public final void sampleFrom(SampledTurn turn, JailPolicy policy) {
 		return;
 	}
 	
@@ -27,8 +35,28 @@ import com.benpochily.monopoly.board.space.GoToSpace;
 	 * If we land here, go to jail and end turn
 	 */
 	@Override
-	public final void updateProbAndRoll(int numDoubles, double multiplier, boolean rollAgain) {
-		addToMidProb(multiplier);
-		board().jail().updateProbAndRoll(numDoubles, multiplier, false);
+	public final void updateProbAndRoll(ProbAccumulator acc, int numDoubles, double multiplier, boolean rollAgain) {
+		addToMidProb(acc, multiplier);
+		board().jail().updateProbAndRoll(acc, numDoubles, multiplier, false);
+	}
+	
+	/**
+	 * As getProbFrom, no turn can be walked from here
+	 */
+	@Override
+	public final void walkDeckFrom(DeckWalk walk, int deckState, JailPolicy policy) {
+		return;
+	}
+	
+	@Override
+	public final void walkDeckLanding(DeckWalk walk, int deckState, int numDoubles, double multiplier, boolean rollAgain) {
+		walk.addToMidProb(ID(), deckState, multiplier);
+		board().jail().walkDeckLanding(walk, deckState, numDoubles, multiplier, false);
+	}
+	
+	@Override
+	public final void sampleLanding(SampledTurn turn, int numDoubles, boolean rollAgain) {
+		turn.addMid(ID());
+		board().jail().sampleLanding(turn, numDoubles, false);
 	}
 }
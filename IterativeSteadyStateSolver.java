@@ -0,0 +1,73 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.util.Arrays;
+
+/**
+ * Finds the steady state by power iteration: repeatedly playing one more turn from an
+ * estimate of the steady state, using the sparse Markov matrix, until the estimate stops changing.
+ * Each iteration costs O(nonzeros), so on large or sparse boards this is far cheaper than
+ * a dense solve. Starting from the steady state of a similar board (a warm start) cuts the
+ * number of iterations needed.
+ */
+public final class IterativeSteadyStateSolver implements SteadyStateSolver {
+	/**
+	 * The default tolerance, which matches the dense solve to about 1e-12 on the standard board
+	 */
+	public static final double DEFAULT_TOLERANCE = 1e-14;
+	/**
+	 * The default maximum number of iterations
+	 */
+	public static final int DEFAULT_MAX_ITERATIONS = 10000;
+	
+	private final double tolerance;
+	private final int maxIterations;
+	
+	/**
+	 * Constructs a new IterativeSteadyStateSolver with the default tolerance and iteration cap
+	 */
+	public IterativeSteadyStateSolver() {
+		this(DEFAULT_TOLERANCE, DEFAULT_MAX_ITERATIONS);
+	}
+	
+	/**
+	 * Constructs a new IterativeSteadyStateSolver
+	 * @param tolerance iteration stops once no probability changes by more than this in one iteration
+	 * @param maxIterations iteration stops after this many iterations, even if not converged
+	 */
+	public IterativeSteadyStateSolver(double tolerance, int maxIterations) {
+		this.tolerance = tolerance;
+		this.maxIterations = maxIterations;
+	}
+
+	@Override
+	public final SteadyStateSolution solve(double[][] markovMatrix, SparseMatrix sparseMarkov, double[] initialGuess) {
+		int n = sparseMarkov.size();
+		double[] current = initialGuess == null ? new double[n] : Arrays.copyOf(initialGuess, n);
+		if (initialGuess == null)
+			Arrays.fill(current, 1.0 / n);
+		double[] next = new double[n];
+		
+		int iterations = 0;
+		double change = Double.POSITIVE_INFINITY;
+		while (change > tolerance && iterations < maxIterations) {
+			sparseMarkov.multiply(current, 0, next, 0);
+			/*
+			 * Probability is lost from rows which are all zero (no turn ends on Go To Jail),
+			 * so renormalize each iteration to keep the estimate a distribution.
+			 */
+			double sum = 0;
+			for (int i = 0; i < n; i++)
+				sum += next[i];
+			change = 0;
+			for (int i = 0; i < n; i++) {
+				next[i] /= sum;
+				change = Math.max(change, Math.abs(next[i] - current[i]));
+			}
+			double[] temp = current;
+			current = next;
+			next = temp;
+			iterations++;
+		}
+		return new SteadyStateSolution(current, iterations, sparseMarkov);
+	}
+}
@@ -0,0 +1,111 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.util.Arrays;
+
+/**
+ * Describes how a player decides whether to pay to leave jail: for each turn spent in jail,
+ * the probability that they pay (or play a Get Out of Jail Free card) at the start of the
+ * turn rather than rolling for doubles. A player who doesn't pay on their last turn in jail 
+ * rolls and must leave regardless.
+ * 
+ * The stayInJail argument taken throughout this package chooses between PAY_IMMEDIATELY
+ * (false) and STAY_FULL_TERM (true).
+ * @see JailPolicyTables
+ */
+public final class JailPolicy {
+	/**
+	 * Always pays to leave jail at the first opportunity
+	 */
+	public static final JailPolicy PAY_IMMEDIATELY = new JailPolicy(new double[] { 1.0 });
+	
+	/**
+	 * Never pays, and stays in jail until doubles are rolled or the last turn is over
+	 */
+	public static final JailPolicy STAY_FULL_TERM = new JailPolicy(new double[] { 0.0 });
+	
+	/*
+	 * The probability of leaving on each turn in jail, counting from zero. Turns past
+	 * the end of the array use its last element.
+	 */
+	private final double[] leaveProbabilities;
+	
+	/**
+	 * Returns the policy selected by a stayInJail argument
+	 * @param stayInJail true for STAY_FULL_TERM, false for PAY_IMMEDIATELY
+	 * @return the policy
+	 */
+	public static final JailPolicy of(boolean stayInJail) {
+		return stayInJail ? STAY_FULL_TERM : PAY_IMMEDIATELY;
+	}
+	
+	/**
+	 * Returns a policy with the given probability of paying to leave on each turn in jail
+	 * @param leaveProbabilities the probability of paying to leave on the first, second, etc. 
+	 * turn in jail. Later turns use the last probability given.
+	 * @return the policy
+	 */
+	public static final JailPolicy of(double... leaveProbabilities) {
+		if (leaveProbabilities.length == 0)
+			throw new IllegalArgumentException("at least one leave probability is required");
+		for (double p : leaveProbabilities)
+			if (!(p >= 0.0 && p <= 1.0))
+				throw new IllegalArgumentException("leave probabilities must be between 0 and 1: " + p);
+		return new JailPolicy(leaveProbabilities.clone());
+	}
+	
+	/**
+	 * Returns a policy which stays in jail for a number of turns, then pays to leave
+	 * @param turn the turn in jail on which to pay to leave, counting from zero
+	 * @return the policy
+	 */
+	public static final JailPolicy leaveOnTurn(int turn) {
+		if (turn < 0)
+			throw new IllegalArgumentException("turn must not be negative");
+		double[] leaveProbabilities = new double[turn + 1];
+		leaveProbabilities[turn] = 1.0;
+		return new JailPolicy(leaveProbabilities);
+	}
+	
+	/**
+	 * Returns a policy which pays to leave with the same probability on every turn in jail
+	 * @param probability the probability of paying to leave on each turn
+	 * @return the policy
+	 */
+	public static final JailPolicy leaveWithProbability(double probability) {
+		return of(probability);
+	}
+	
+	private JailPolicy(double[] leaveProbabilities) {
+		this.leaveProbabilities = leaveProbabilities;
+	}
+	
+	/**
+	 * @param turn the turn in jail, counting from zero
+	 * @return the probability of paying to leave at the start of the turn
+	 */
+	public final double leaveProbability(int turn) {
+		return leaveProbabilities[Math.min(turn, leaveProbabilities.length - 1)];
+	}
+	
+	/**
+	 * @return the leave probabilities the policy was made with, which must not be modified
+	 */
+	/*package*/ final double[] leaveProbabilities() {
+		return leaveProbabilities;
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof JailPolicy && Arrays.equals(leaveProbabilities, ((JailPolicy) o).leaveProbabilities);
+	}
+	
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(leaveProbabilities);
+	}
+	
+	@Override
+	public String toString() {
+		return "JailPolicy" + Arrays.toString(leaveProbabilities);
+	}
+}
@@ -0,0 +1,122 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+
+import com.benpochily.monopoly.board.Board;
+
+/**
+ * Builds and caches ProbabilityTables for a single board under any jail policies.
+ * 
+ * The move tree of the board is walked once, on construction, for the usual short and 
+ * long jail stays. A table for other policies only has to walk the rows of the jail states,
+ * which are the only rows a policy affects, before solving its steady states and calculating
+ * its turns. Each table is built once per (policy, policy, depth) and then cached. Callers
+ * asking for a table which is being built wait for that build rather than starting another,
+ * and no lock is held while a table is built.
+ * 
+ * Tables returned here answer for their policies in place of the two jail stays: a
+ * stayInJail argument of false selects the first policy, and true the second.
+ */
+public final class JailPolicyTables {
+	private final ProbabilityCalculator components;
+	private final ForkJoinPool pool;
+	private final TablePrecision precision;
+	private final ConcurrentMap<Key, CompletableFuture<ProbabilityTable>> tables = new ConcurrentHashMap<Key, CompletableFuture<ProbabilityTable>>();
+	
+	/**
+	 * Constructs a new JailPolicyTables for the given board, immediately walking its move tree
+	 * @param board The board for which probabilities should be calculated
+	 */
+	public JailPolicyTables(Board board) {
+		this(board, TablePrecision.DOUBLE, null);
+	}
+	
+	/**
+	 * Constructs a new JailPolicyTables for the given board, immediately walking its move tree
+	 * @param board The board for which probabilities should be calculated
+	 * @param precision The precision per-turn probabilities should be stored with
+	 * @param pool The pool to calculate on, or null to calculate on the calling thread
+	 */
+	public JailPolicyTables(Board board, TablePrecision precision, ForkJoinPool pool) {
+		this.components = new ProbabilityCalculator(board, pool);
+		this.precision = precision;
+		this.pool = pool;
+	}
+	
+	/**
+	 * Returns a table of probabilities for a player following policy, building it if it isn't cached.
+	 * Both jail strategies of the table follow the policy.
+	 * @param policy how the player decides whether to pay to leave jail
+	 * @param depth How many turns in the future exact data should be calculated for
+	 * @return an immutable, thread-safe table of probabilities
+	 */
+	public final ProbabilityTable getTable(JailPolicy policy, int depth) {
+		return getTable(policy, policy, depth);
+	}
+	
+	/**
+	 * Returns a table of probabilities for players following two policies, building it if it isn't cached
+	 * @param policy the policy the table follows when stayInJail is false
+	 * @param policyJail the policy the table follows when stayInJail is true
+	 * @param depth How many turns in the future exact data should be calculated for
+	 * @return an immutable, thread-safe table of probabilities
+	 */
+	public final ProbabilityTable getTable(JailPolicy policy, JailPolicy policyJail, int depth) {
+		Key key = new Key(policy, policyJail, depth);
+		CompletableFuture<ProbabilityTable> future = tables.get(key);
+		if (future != null)
+			return future.join();
+		
+		future = new CompletableFuture<ProbabilityTable>();
+		CompletableFuture<ProbabilityTable> existing = tables.putIfAbsent(key, future);
+		if (existing != null)
+			return existing.join();
+		
+		try {
+			future.complete(ProbabilityTable.makeTable(new ProbabilityCalculator(components, pool, policy, policyJail), depth, precision));
+		} catch (RuntimeException | Error e) {
+			//don't cache failures, let the next caller try again
+			tables.remove(key, future);
+			future.completeExceptionally(e);
+			throw e;
+		}
+		return future.join();
+	}
+	
+	/**
+	 * @return the number of tables currently cached, including any being built
+	 */
+	public final int size() {
+		return tables.size();
+	}
+	
+	//the policies and depth a cached table was built for
+	private static final class Key {
+		private final JailPolicy policy;
+		private final JailPolicy policyJail;
+		private final int depth;
+		
+		Key(JailPolicy policy, JailPolicy policyJail, int depth) {
+			this.policy = policy;
+			this.policyJail = policyJail;
+			this.depth = depth;
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key other = (Key) o;
+			return depth == other.depth && policy.equals(other.policy) && policyJail.equals(other.policyJail);
+		}
+		
+		@Override
+		public int hashCode() {
+			return Objects.hash(policy, policyJail, depth);
+		}
+	}
+}
@@ -28,34 +28,113 @@ import com.benpochily.monopoly.board.space.Jail;
 	}
 	
 	/**
-	 * Override parent method to handle jail behavior
+	 * @return which turn in jail this space represents, counting from zero
+	 */
+	public final int jailTurn() {
+		return id - board().physicalSize();
+	}
+	
+	/**
+	 * Override parent method to split between paying to leave and staying,
+	 * as the policy says for this turn in jail
 	 */
 	@Override
-	public void getProbFrom(boolean stayInJail) {
-		if (stayInJail)
-			getProbabilitiesStayInJail();
-		else
-			board().getSpace(justVisitingID).getProbFrom(stayInJail);
+	public void getProbFrom(ProbAccumulator acc, JailPolicy policy) {
+		double leave = policy.leaveProbability(jailTurn());
+		//paying to leave is a normal turn from just visiting
+		if (leave > 0.0)
+			board().addForwardProb(acc, justVisitingID, 0, leave);
+		if (leave < 1.0)
+			getProbabilitiesStayInJail(acc, 1.0 - leave);
 	}
 	
 	/**
 	 * Updates the probabilities of each ending square, assuming
 	 * the player wishes to stay in jail (does not pay or play
 	 * Get Out of Jail Free card)
+	 * @param acc the accumulator to add probabilities to
+	 * @param multiplier the probability that the player stays
 	 */
-	protected void getProbabilitiesStayInJail() {		
-		board().dice().forEachPossibleRoll((roll, size) -> {			
+	protected void getProbabilitiesStayInJail(ProbAccumulator acc, double multiplier) {		
+		RollDistribution rolls = board().rolls();
+		acc.addNodes(rolls.size());
+		for (int i = 0; i < rolls.size(); i++) {
 			//if doubles, we're forced to leave jail (but our doubles are accounted for, we don't roll again)
-			if (roll.isDoubles())
-				board().nextSpace(board().getSpace(justVisitingID), roll.getTotal()).updateProbAndRoll(1, (double) 1 / size, false);
+			if (rolls.isDoubles(i))
+				board().nextSpace(board().getSpace(justVisitingID), rolls.total(i)).updateProbAndRoll(acc, 1, rolls.probability(i) * multiplier, false);
+			else
+				board().getSpace(this.ID() + 1).updateProbAndRoll(acc, 0, rolls.probability(i) * multiplier, false);
+		}
+	}
+	
+	/**
+	 * Override parent method to pay to leave or stay, as the policy says for this turn in jail
+	 */
+	@Override
+	public void sampleFrom(SampledTurn turn, JailPolicy policy) {
+		double leave = policy.leaveProbability(jailTurn());
+		if (leave >= 1.0 || (leave > 0.0 && turn.random().nextDouble() < leave))
+			board().getSpace(justVisitingID).sampleRoll(turn, 0);
+		else
+			sampleStayInJail(turn);
+	}
+	
+	/**
+	 * Plays a random turn for a player who stays in jail, as getProbabilitiesStayInJail
+	 * does for every outcome
+	 * @param turn the record to add landings to
+	 */
+	protected void sampleStayInJail(SampledTurn turn) {
+		RollDistribution rolls = board().rolls();
+		int i = rolls.sample(turn.random());
+		if (rolls.isDoubles(i))
+			board().nextSpace(board().getSpace(justVisitingID), rolls.total(i)).sampleLanding(turn, 1, false);
+		else
+			board().getSpace(this.ID() + 1).sampleLanding(turn, 0, false);
+	}
+	
+	/**
+	 * Override parent method to split between paying to leave and staying, as getProbFrom
+	 */
+	@Override
+	public void walkDeckFrom(DeckWalk walk, int deckState, JailPolicy policy) {
+		double leave = policy.leaveProbability(jailTurn());
+		if (leave > 0.0)
+			board().getSpace(justVisitingID).walkDeckRoll(walk, deckState, 0, leave);
+		if (leave < 1.0)
+			walkDeckStayInJail(walk, deckState, 1.0 - leave);
+	}
+	
+	/**
+	 * Walks a turn for a player who stays in jail with the decks in a given state,
+	 * as getProbabilitiesStayInJail
+	 * @param walk the walk to add probabilities to
+	 * @param deckState the positions of every deck
+	 * @param multiplier the probability that the player stays
+	 */
+	protected void walkDeckStayInJail(DeckWalk walk, int deckState, double multiplier) {
+		RollDistribution rolls = board().rolls();
+		for (int i = 0; i < rolls.size(); i++) {
+			if (rolls.isDoubles(i))
+				board().nextSpace(board().getSpace(justVisitingID), rolls.total(i)).walkDeckLanding(walk, deckState, 1, rolls.probability(i) * multiplier, false);
 			else
-				board().getSpace(this.ID() + 1).updateProbAndRoll(0, (double)1 / size, false);
-		});
+				board().getSpace(this.ID() + 1).walkDeckLanding(walk, deckState, 0, rolls.probability(i) * multiplier, false);
+		}
+	}
+	
+	@Override
+	protected void walkDeckLanding(DeckWalk walk, int deckState, int numDoubles, double multiplier, boolean rollAgain) {
+		walk.addToEndProb(ID(), deckState, multiplier);
+	}
+	
+	@Override
+	protected void sampleLanding(SampledTurn turn, int numDoubles, boolean rollAgain) {
+		turn.addEnd(ID());
 	}
 	
 	@Override
-	protected void updateProbAndRoll(int numDoubles, double multiplier, boolean rollAgain) {
+	protected void updateProbAndRoll(ProbAccumulator acc, int numDoubles, double multiplier, boolean rollAgain) {
 		//Turn ends upon going to jail, so it doesn't matter if we had doubles
-		addToEndProb(multiplier);
+		addToEndProb(acc, multiplier);
 	}
 }
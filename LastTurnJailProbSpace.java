@@ -16,9 +16,32 @@ import com.benpochily.monopoly.board.space.Jail;
 	 * override parent method to handle leaving jail
 	 */
 	@Override
-	public void getProbabilitiesStayInJail() {
-		board().dice().forEachPossibleRoll((roll, size) -> {
-				board().nextSpace(board().getSpace(justVisitingID()), roll.getTotal()).updateProbAndRoll(roll.isDoubles() ? 1 : 0, (double) 1 / size, false);
-		});
+	public void getProbabilitiesStayInJail(ProbAccumulator acc, double multiplier) {
+		RollDistribution rolls = board().rolls();
+		acc.addNodes(rolls.size());
+		for (int i = 0; i < rolls.size(); i++)
+			board().nextSpace(board().getSpace(justVisitingID()), rolls.total(i)).updateProbAndRoll(acc, rolls.isDoubles(i) ? 1 : 0, 
+					rolls.probability(i) * multiplier, false);
+	}
+	
+	/**
+	 * override parent method to leave jail after rolling
+	 */
+	@Override
+	protected void walkDeckStayInJail(DeckWalk walk, int deckState, double multiplier) {
+		RollDistribution rolls = board().rolls();
+		for (int i = 0; i < rolls.size(); i++)
+			board().nextSpace(board().getSpace(justVisitingID()), rolls.total(i)).walkDeckLanding(walk, deckState, rolls.isDoubles(i) ? 1 : 0, 
+					rolls.probability(i) * multiplier, false);
+	}
+	
+	/**
+	 * override parent method to leave jail after rolling
+	 */
+	@Override
+	protected void sampleStayInJail(SampledTurn turn) {
+		RollDistribution rolls = board().rolls();
+		int i = rolls.sample(turn.random());
+		board().nextSpace(board().getSpace(justVisitingID()), rolls.total(i)).sampleLanding(turn, rolls.isDoubles(i) ? 1 : 0, false);
 	}
 }
@@ -0,0 +1,175 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * TableStorage which computes each turn the first time it is requested and caches it.
+ * Once two successive turns differ by less than a tolerance, the chain is considered
+ * converged: no further turns are computed or stored, and every later turn is answered
+ * from the steady state vector. The rare rows which do not converge to the steady state
+ * (such as the all-zero row of a space no turn can end on) are kept as they are.
+ * 
+ * Reads of turns which have already been computed do not lock. Extending the table
+ * is synchronized, so each turn is only ever computed once.
+ */
+/*package*/ final class LazyTableStorage extends TableStorage {
+	private final SparseMatrix markovMatrix;
+	private final SparseMatrix oneTurnMatrix;
+	private final double[] steadyState;
+	private final double tolerance;
+	private final boolean stayInJail;
+	private final ProbabilityTableListener listener;
+	
+	//the Markov matrix raised to the number of turns computed so far, only accessed while holding the lock
+	private double[] intermediateMarkov;
+	
+	/*
+	 * Computed turns, each a flat size() x size() array indexed [origin * size() + destination].
+	 * The array is replaced, never modified, once published.
+	 */
+	private volatile double[][] turns = new double[0][];
+	private volatile boolean converged = false;
+	
+	//rows of the converged table which differ from the steady state, null for all other rows
+	private double[][] limitRows;
+	
+	/**
+	 * Constructs a new LazyTableStorage. No turns are computed until they are requested.
+	 * @param markovMatrix the one-turn transition matrix of end probabilities
+	 * @param oneTurnMatrix the one-turn transition matrix plus the one-turn matrix of mid probabilities
+	 * @param steadyState the steady state probabilities, used once the table has converged
+	 * @param tolerance the largest difference between two successive turns for which 
+	 * the table is considered converged
+	 * @param stayInJail the jail strategy of the table, as reported to listener
+	 * @param listener the listener to report each extension of the table to
+	 */
+	LazyTableStorage(SparseMatrix markovMatrix, SparseMatrix oneTurnMatrix, double[] steadyState, double tolerance,
+			boolean stayInJail, ProbabilityTableListener listener) {
+		super(Integer.MAX_VALUE, steadyState.length);
+		this.markovMatrix = markovMatrix;
+		this.oneTurnMatrix = oneTurnMatrix;
+		this.steadyState = steadyState;
+		this.tolerance = tolerance;
+		this.stayInJail = stayInJail;
+		this.listener = listener;
+		intermediateMarkov = new double[size() * size()];
+		for (int i = 0; i < size(); i++)
+			intermediateMarkov[i * size() + i] = 1.0;
+	}
+	
+	@Override
+	public final double get(int turn, int origin, int destination) {
+		double[][] computed = turns;
+		if (turn < computed.length)
+			return computed[turn][origin * size() + destination];
+		if (converged)
+			return limitRows[origin] == null ? steadyState[destination] : limitRows[origin][destination];
+		extendTo(turn);
+		return get(turn, origin, destination);
+	}
+	
+	@Override
+	public final void copyRow(int turn, int origin, double[] result, int offset) {
+		double[] row = row(turn, origin);
+		System.arraycopy(row, rowOffset(turn, origin), result, offset, size());
+	}
+	
+	@Override
+	public final double dot(int turn, int origin, double[] weights) {
+		double[] row = row(turn, origin);
+		return dot(row, rowOffset(turn, origin), weights);
+	}
+	
+	@Override
+	public final double sum(int turn, int origin, BitSet spaces) {
+		double[] row = row(turn, origin);
+		return sum(row, rowOffset(turn, origin), spaces);
+	}
+	
+	/*
+	 * Returns the array holding a row, computing it first if necessary. The row starts
+	 * at rowOffset(), which must be called afterwards: once a turn has been computed it
+	 * stays computed, and once the table has converged no more turns are computed, so
+	 * the two always agree.
+	 */
+	private double[] row(int turn, int origin) {
+		double[][] computed = turns;
+		if (turn < computed.length)
+			return computed[turn];
+		if (converged)
+			return limitRows[origin] == null ? steadyState : limitRows[origin];
+		extendTo(turn);
+		return row(turn, origin);
+	}
+	
+	private int rowOffset(int turn, int origin) {
+		return turn < turns.length ? origin * size() : 0;
+	}
+	
+	/**
+	 * @return the number of turns which have been computed so far
+	 */
+	@Override
+	public final int storedDepth() {
+		return turns.length;
+	}
+	
+	/**
+	 * @return whether the table has converged to the steady state
+	 */
+	public final boolean converged() {
+		return converged;
+	}
+	
+	@Override
+	public final long footprint() {
+		return (long) turns.length * size() * size() * Double.BYTES;
+	}
+	
+	//computes turns until the requested turn is available or the table converges, and reports them
+	private synchronized void extendTo(int turn) {
+		int n = size();
+		double[][] computed = turns;
+		if (computed.length > turn || converged)
+			return;
+		long start = System.nanoTime();
+		while (computed.length <= turn && !converged) {
+			// same steps as ProbabilityCalculator.getTable, one turn at a time
+			double[] next = new double[n * n];
+			oneTurnMatrix.multiplyRows(intermediateMarkov, next, 0);
+			double[] nextMarkov = new double[n * n];
+			markovMatrix.multiplyRows(intermediateMarkov, nextMarkov, 0);
+			intermediateMarkov = nextMarkov;
+			
+			if (computed.length > 0 && maxDifference(computed[computed.length - 1], next) < tolerance) {
+				//release the working matrix, it won't be needed again
+				intermediateMarkov = null;
+				limitRows = new double[n][];
+				for (int i = 0; i < n; i++) {
+					double[] row = Arrays.copyOfRange(next, i * n, (i + 1) * n);
+					if (maxDifference(row, steadyState) >= tolerance)
+						limitRows[i] = row;
+				}
+				converged = true; //volatile write publishes limitRows
+			} else {
+				computed = Arrays.copyOf(computed, computed.length + 1);
+				computed[computed.length - 1] = next;
+				turns = computed;
+			}
+		}
+		listener.tableBuilt(stayInJail, computed.length, System.nanoTime() - start, footprint());
+	}
+	
+	private static double maxDifference(double[] a, double[] b) {
+		double max = 0;
+		for (int i = 0; i < a.length; i++)
+			max = Math.max(max, Math.abs(a[i] - b[i]));
+		return max;
+	}
+	
+	@Override
+	public final TablePrecision precision() {
+		return TablePrecision.DOUBLE;
+	}
+}
@@ -0,0 +1,48 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * TableStorage which reads probabilities directly from a buffer, usually a region of a
+ * memory-mapped snapshot file, without copying them onto the heap.
+ * @see TableSnapshot
+ */
+/*package*/ final class MappedTableStorage extends TableStorage {
+	//exactly one of these is non-null, depending on precision
+	private final DoubleBuffer doubles;
+	private final FloatBuffer floats;
+	
+	/**
+	 * Constructs a new MappedTableStorage
+	 * @param buffer the buffer holding the table, laid out as described by TableStorage.index(),
+	 * from its position to its limit
+	 * @param depth the number of turns in the table
+	 * @param size the number of spaces (including jail states) on the board
+	 * @param precision the precision the values in the buffer are stored with
+	 */
+	MappedTableStorage(ByteBuffer buffer, int depth, int size, TablePrecision precision) {
+		super(depth, size);
+		doubles = precision == TablePrecision.DOUBLE ? buffer.asDoubleBuffer() : null;
+		floats = precision == TablePrecision.FLOAT ? buffer.asFloatBuffer() : null;
+	}
+	
+	@Override
+	public final double get(int turn, int origin, int destination) {
+		return doubles != null ? doubles.get(index(turn, origin, destination)) : floats.get(index(turn, origin, destination));
+	}
+	
+	/**
+	 * The mapped pages are not on the heap, but are counted here since they are resident once read
+	 */
+	@Override
+	public final long footprint() {
+		return doubles != null ? (long) doubles.capacity() * Double.BYTES : (long) floats.capacity() * Float.BYTES;
+	}
+	
+	@Override
+	public final TablePrecision precision() {
+		return doubles != null ? TablePrecision.DOUBLE : TablePrecision.FLOAT;
+	}
+}
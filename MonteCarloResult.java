@@ -0,0 +1,174 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+/**
+ * Probabilities estimated by a MonteCarloSimulator, with the same queries as a 
+ * ProbabilityTable, and the half-width of a confidence interval around each estimate.
+ * Errors use the normal approximation: for per-turn probabilities from the variance of
+ * the number of landings per game, and for steady states from the variance of the
+ * means of independent batches of turns. A probability which was never observed has an
+ * error of 3 / trajectories, the upper bound of its 95% confidence interval (the rule of three).
+ * @see MonteCarloSimulator
+ */
+public final class MonteCarloResult {
+	/**
+	 * The critical value of the standard normal distribution for a 95% confidence interval
+	 */
+	public static final double Z_95 = 1.959963984540054;
+	
+	private final int depth;
+	private final int size;
+	private final int trajectories;
+	private final int batches;
+	private final Strategy strategy;
+	private final Strategy strategyJail;
+	
+	/*package*/ MonteCarloResult(int depth, int size, int trajectories, int batches, Strategy strategy, Strategy strategyJail) {
+		this.depth = depth;
+		this.size = size;
+		this.trajectories = trajectories;
+		this.batches = batches;
+		this.strategy = strategy;
+		this.strategyJail = strategyJail;
+	}
+	
+	/**
+	 * returns the estimated probability that a player starting from origin will land on
+	 * destination turn turns in the future, as ProbabilityTable.getProbability
+	 * @param origin the id of the starting space
+	 * @param destination the id of the target space
+	 * @param turn the particular turn to check
+	 * @param stayInJail true for the long jail stay (or second policy simulated), false for the short
+	 * @return the estimate
+	 */
+	public final double getProbability(int origin, int destination, int turn, boolean stayInJail) {
+		return (double) strategy(stayInJail).sum[index(turn, origin, destination)] / trajectories;
+	}
+	
+	/**
+	 * returns the half-width of the 95% confidence interval around getProbability
+	 * @param origin the id of the starting space
+	 * @param destination the id of the target space
+	 * @param turn the particular turn to check
+	 * @param stayInJail true for the long jail stay (or second policy simulated), false for the short
+	 * @return the half-width
+	 */
+	public final double getProbabilityError(int origin, int destination, int turn, boolean stayInJail) {
+		Strategy s = strategy(stayInJail);
+		int i = index(turn, origin, destination);
+		if (s.sum[i] == 0)
+			return 3.0 / trajectories;
+		double mean = (double) s.sum[i] / trajectories;
+		double variance = ((double) s.sumSquares[i] / trajectories - mean * mean) * trajectories / (trajectories - 1);
+		return Z_95 * Math.sqrt(Math.max(variance, 0.0) / trajectories);
+	}
+	
+	/**
+	 * returns the estimated steady-state probability of a particular space, as 
+	 * ProbabilityTable.getSteadyState
+	 * @param space the target space
+	 * @param stayInJail true for the long jail stay (or second policy simulated), false for the short
+	 * @return the estimate
+	 */
+	public final double getSteadyState(int space, boolean stayInJail) {
+		return strategy(stayInJail).batchSum[space] / batches;
+	}
+	
+	/**
+	 * returns the half-width of the 95% confidence interval around getSteadyState
+	 * @param space the target space
+	 * @param stayInJail true for the long jail stay (or second policy simulated), false for the short
+	 * @return the half-width
+	 */
+	public final double getSteadyStateError(int space, boolean stayInJail) {
+		Strategy s = strategy(stayInJail);
+		double mean = s.batchSum[space] / batches;
+		double variance = (s.batchSumSquares[space] / batches - mean * mean) * batches / (batches - 1);
+		return Z_95 * Math.sqrt(Math.max(variance, 0.0) / batches);
+	}
+	
+	/**
+	 * @return the number of turns probabilities were estimated for
+	 */
+	public final int depth() {
+		return depth;
+	}
+	
+	/**
+	 * @return the number of spaces on the board plus the number of turns in jail
+	 */
+	public final int size() {
+		return size;
+	}
+	
+	/**
+	 * @return the number of games played from each starting space
+	 */
+	public final int trajectories() {
+		return trajectories;
+	}
+	
+	/**
+	 * Returns a ProbabilityTable holding the estimates, for code which only accepts a table.
+	 * Its one-turn matrices, used by distributionsFrom, are estimated from the first turn of each game.
+	 * @return an immutable, thread-safe table of probabilities
+	 */
+	public final ProbabilityTable toTable() {
+		return new ProbabilityTable(storage(false), steadyState(false), markovMatrix(false), oneTurnMatrix(false),
+				storage(true), steadyState(true), markovMatrix(true), oneTurnMatrix(true), 0, 0, TableModel.ESTIMATED, ProbabilityTableListener.NONE);
+	}
+	
+	private TableStorage storage(boolean stayInJail) {
+		double[] table = new double[TableStorage.length(depth, size)];
+		for (int i = 0; i < table.length; i++)
+			table[i] = (double) strategy(stayInJail).sum[i] / trajectories;
+		return TableStorage.create(table, depth, size, TablePrecision.DOUBLE);
+	}
+	
+	private double[] steadyState(boolean stayInJail) {
+		double[] result = new double[size];
+		for (int i = 0; i < size; i++)
+			result[i] = getSteadyState(i, stayInJail);
+		return result;
+	}
+	
+	private SparseMatrix markovMatrix(boolean stayInJail) {
+		double[][] matrix = new double[size][size];
+		for (int i = 0; i < size; i++)
+			for (int j = 0; j < size; j++)
+				matrix[i][j] = (double) strategy(stayInJail).ends[i * size + j] / trajectories;
+		return SparseMatrix.fromDense(matrix);
+	}
+	
+	private SparseMatrix oneTurnMatrix(boolean stayInJail) {
+		double[][] matrix = new double[size][size];
+		for (int i = 0; i < size; i++)
+			for (int j = 0; j < size; j++)
+				matrix[i][j] = getProbability(i, j, 0, stayInJail);
+		return SparseMatrix.fromDense(matrix);
+	}
+	
+	private int index(int turn, int origin, int destination) {
+		return (turn * size + origin) * size + destination;
+	}
+	
+	private Strategy strategy(boolean stayInJail) {
+		return stayInJail ? strategyJail : strategy;
+	}
+	
+	//the merged counters for one jail strategy
+	/*package*/ static final class Strategy {
+		private final long[] sum;
+		private final long[] sumSquares;
+		private final long[] ends;
+		private final double[] batchSum;
+		private final double[] batchSumSquares;
+		
+		Strategy(long[] sum, long[] sumSquares, long[] ends, double[] batchSum, double[] batchSumSquares) {
+			this.sum = sum;
+			this.sumSquares = sumSquares;
+			this.ends = ends;
+			this.batchSum = batchSum;
+			this.batchSumSquares = batchSumSquares;
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import com.benpochily.monopoly.board.Board;
+
+/**
+ * Estimates the probabilities in a ProbabilityTable by playing random turns on the same 
+ * ProbBoard model the exact calculation walks, rather than walking every outcome.
+ * This is useful as an independent check on the exact calculation, and for boards too
+ * large to calculate exactly.
+ * 
+ * Turns are sampled through the ProbSpaces alone, so the board's move trees are neither
+ * compiled nor memoized (see ProbBoard.uncompiled). Like the exact calculation, every card
+ * is drawn at random with replacement, each card in the deck equally likely, rather than from
+ * a shuffled deck drawn in order as in the game (for which see ProbabilityTable.makeDeckStateTable).
+ * 
+ * Work is split into independent tasks, each with its own SplittableRandom split from a 
+ * single seed and its own counters, which are merged once every task has finished. Results
+ * for a given seed are the same however many threads are used.
+ * @see MonteCarloResult
+ */
+public final class MonteCarloSimulator {
+	/**
+	 * The number of turns played from Go before a chain's landings are counted towards the steady state
+	 */
+	public static final int BURN_IN_TURNS = 100;
+	
+	/**
+	 * The number of turns in each batch of a chain, whose means are used to estimate the
+	 * error in the steady state
+	 */
+	public static final int BATCH_TURNS = 1000;
+	
+	private final ProbBoard board;
+	private final ForkJoinPool pool;
+	private final long seed;
+	
+	/**
+	 * Constructs a new MonteCarloSimulator which runs on the calling thread
+	 * @param board The board for which probabilities should be estimated
+	 * @param seed The seed all randomness is derived from
+	 */
+	public MonteCarloSimulator(Board board, long seed) {
+		this(board, null, seed);
+	}
+	
+	/**
+	 * Constructs a new MonteCarloSimulator
+	 * @param board The board for which probabilities should be estimated
+	 * @param pool The pool to simulate on, or null to simulate on the calling thread
+	 * @param seed The seed all randomness is derived from
+	 */
+	public MonteCarloSimulator(Board board, ForkJoinPool pool, long seed) {
+		this.board = ProbBoard.uncompiled(board);
+		this.pool = pool;
+		this.seed = seed;
+	}
+	
+	/**
+	 * Estimates the probabilities for the short and long jail stays
+	 * @param depth How many turns in the future probabilities should be estimated for
+	 * @param trajectories The number of games of depth turns played from each starting space
+	 * @param steadyStateBatches The number of batches of BATCH_TURNS turns played to
+	 * estimate the steady state, at least two
+	 * @return the estimates
+	 */
+	public final MonteCarloResult simulate(int depth, int trajectories, int steadyStateBatches) {
+		return simulate(JailPolicy.PAY_IMMEDIATELY, JailPolicy.STAY_FULL_TERM, depth, trajectories, steadyStateBatches);
+	}
+	
+	/**
+	 * Estimates the probabilities for two jail policies
+	 * @param policy the policy the result follows when stayInJail is false
+	 * @param policyJail the policy the result follows when stayInJail is true
+	 * @param depth How many turns in the future probabilities should be estimated for
+	 * @param trajectories The number of games of depth turns played from each starting space
+	 * @param steadyStateBatches The number of batches of BATCH_TURNS turns played to
+	 * estimate the steady state, at least two
+	 * @return the estimates
+	 * @throws IllegalArgumentException if the arguments are out of range, or the estimates of
+	 * every turn would hold more than Integer.MAX_VALUE probabilities
+	 */
+	public final MonteCarloResult simulate(JailPolicy policy, JailPolicy policyJail, int depth, int trajectories, int steadyStateBatches) {
+		if (depth < 1 || trajectories < 2 || steadyStateBatches < 2)
+			throw new IllegalArgumentException("depth must be positive, and trajectories and steadyStateBatches at least two");
+		int n = board.size();
+		//checked before anything is played, so every counter below fits and is indexed without overflow
+		int length = TableStorage.length(depth, n);
+		JailPolicy[] policies = { policy, policyJail };
+		
+		//split every task's randomness up front, in a fixed order, so results don't depend on scheduling
+		SplittableRandom root = new SplittableRandom(seed);
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		TrajectoryCounts[][] trajectoryCounts = new TrajectoryCounts[2][n];
+		ChainCounts[][] chainCounts = new ChainCounts[2][steadyStateBatches];
+		for (int s = 0; s < 2; s++) {
+			for (int origin = 0; origin < n; origin++) {
+				TrajectoryCounts counts = trajectoryCounts[s][origin] = new TrajectoryCounts(depth, n);
+				SampledTurn turn = new SampledTurn(root.split());
+				JailPolicy p = policies[s];
+				int start = origin;
+				tasks.add(() -> counts.play(board, turn, p, start, trajectories));
+			}
+			//one chain per batch, so batches are independent and run in parallel
+			for (int b = 0; b < steadyStateBatches; b++) {
+				ChainCounts counts = chainCounts[s][b] = new ChainCounts(n);
+				SampledTurn turn = new SampledTurn(root.split());
+				JailPolicy p = policies[s];
+				tasks.add(() -> counts.play(board, turn, p));
+			}
+		}
+		ParallelTasks.runAll(pool, tasks);
+		
+		//merge every task's counters
+		MonteCarloResult.Strategy[] strategies = new MonteCarloResult.Strategy[2];
+		for (int s = 0; s < 2; s++) {
+			long[] sum = new long[length];
+			long[] sumSquares = new long[length];
+			long[] ends = new long[n * n];
+			for (int origin = 0; origin < n; origin++)
+				trajectoryCounts[s][origin].copyTo(origin, sum, sumSquares, ends);
+			double[] batchSum = new double[n];
+			double[] batchSumSquares = new double[n];
+			for (int b = 0; b < steadyStateBatches; b++) {
+				for (int i = 0; i < n; i++) {
+					double mean = (double) chainCounts[s][b].landings[i] / BATCH_TURNS;
+					batchSum[i] += mean;
+					batchSumSquares[i] += mean * mean;
+				}
+			}
+			strategies[s] = new MonteCarloResult.Strategy(sum, sumSquares, ends, batchSum, batchSumSquares);
+		}
+		return new MonteCarloResult(depth, n, trajectories, steadyStateBatches, strategies[0], strategies[1]);
+	}
+	
+	/*
+	 * The counters of one task playing games from a single starting space. For each turn
+	 * and destination, sum holds the number of landings over every game and sumSquares 
+	 * the sum of the squared number of landings per game, for the variance.
+	 */
+	private static final class TrajectoryCounts {
+		private final int depth;
+		private final int size;
+		private final long[] sum;
+		private final long[] sumSquares;
+		private final long[] ends; //the number of games whose first turn ended on each space
+		
+		TrajectoryCounts(int depth, int size) {
+			this.depth = depth;
+			this.size = size;
+			sum = new long[depth * size];
+			sumSquares = new long[depth * size];
+			ends = new long[size];
+		}
+		
+		void play(ProbBoard board, SampledTurn turn, JailPolicy policy, int origin, int trajectories) {
+			for (int t = 0; t < trajectories; t++) {
+				int state = origin;
+				for (int x = 0; x < depth; x++) {
+					turn.reset();
+					board.getSpace(state).sampleFrom(turn, policy);
+					if (turn.end() < 0)
+						break;
+					count(turn, x * size);
+					if (x == 0)
+						ends[turn.end()]++;
+					state = turn.end();
+				}
+			}
+		}
+		
+		//adds each distinct space landed on this turn, with its number of landings
+		private void count(SampledTurn turn, int offset) {
+			for (int i = 0; i < turn.landings(); i++) {
+				int id = turn.landing(i);
+				boolean counted = false;
+				for (int j = 0; j < i && !counted; j++)
+					counted = turn.landing(j) == id;
+				if (counted)
+					continue;
+				int landings = 1;
+				for (int j = i + 1; j < turn.landings(); j++)
+					if (turn.landing(j) == id)
+						landings++;
+				sum[offset + id] += landings;
+				sumSquares[offset + id] += landings * landings;
+			}
+		}
+		
+		//copies these counters into the rows for origin of tables indexed as TableStorage.index()
+		void copyTo(int origin, long[] sum, long[] sumSquares, long[] ends) {
+			for (int x = 0; x < depth; x++) {
+				System.arraycopy(this.sum, x * size, sum, (x * size + origin) * size, size);
+				System.arraycopy(this.sumSquares, x * size, sumSquares, (x * size + origin) * size, size);
+			}
+			System.arraycopy(this.ends, 0, ends, origin * size, size);
+		}
+	}
+	
+	//the counters of one task playing a single long game from Go, counting one batch of turns
+	private static final class ChainCounts {
+		private final long[] landings;
+		
+		ChainCounts(int size) {
+			landings = new long[size];
+		}
+		
+		void play(ProbBoard board, SampledTurn turn, JailPolicy policy) {
+			int state = 0;
+			for (int x = 0; x < BURN_IN_TURNS + BATCH_TURNS; x++) {
+				turn.reset();
+				board.getSpace(state).sampleFrom(turn, policy);
+				if (x >= BURN_IN_TURNS)
+					for (int i = 0; i < turn.landings(); i++)
+						landings[turn.landing(i)]++;
+				state = turn.end();
+			}
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Where a group of players will land over the next few rounds, in which every player takes
+ * one turn. The expected number of visits to each space and the probability that at least one
+ * player lands there are calculated for every round and space at once, on construction.
+ * 
+ * A player's probability of landing on a space in one turn is taken from their table. A player
+ * landing on the same space twice in one turn is rare enough (it takes a card sending them back)
+ * that it is treated as a probability rather than an expected count, and players are independent.
+ * That argument doesn't extend to sets of spaces: a turn that rolls doubles often lands on two
+ * spaces of one color group, so set queries only give an upper bound.
+ * @see MultiPlayerForecaster
+ */
+public final class MultiPlayerForecast {
+	private final int[] positions;
+	private final boolean[] stayInJail;
+	private final double[][] playerRows; //shared with the forecaster's cache, never modified
+	private final int rounds;
+	private final int size;
+	private final double[] expectedVisits;
+	private final double[] hitProbability;
+	
+	/*package*/ MultiPlayerForecast(int[] positions, boolean[] stayInJail, double[][] playerRows, int rounds, int size) {
+		this.positions = positions;
+		this.stayInJail = stayInJail;
+		this.playerRows = playerRows;
+		this.rounds = rounds;
+		this.size = size;
+		
+		//one pass over every player's rows: sum the expected visits, and multiply the chances of missing
+		expectedVisits = new double[rounds * size];
+		double[] miss = new double[rounds * size];
+		Arrays.fill(miss, 1.0);
+		for (double[] row : playerRows) {
+			for (int i = 0; i < row.length; i++) {
+				expectedVisits[i] += row[i];
+				miss[i] *= 1.0 - row[i];
+			}
+		}
+		hitProbability = miss;
+		for (int i = 0; i < hitProbability.length; i++)
+			hitProbability[i] = 1.0 - miss[i];
+	}
+	
+	/**
+	 * returns the expected number of times a space is landed on during a round, across every player
+	 * @param space the id of the space
+	 * @param round the round, counting from zero for the players' next turns
+	 * @return the expected number of visits
+	 */
+	public final double getExpectedVisits(int space, int round) {
+		return expectedVisits[round * size + space];
+	}
+	
+	/**
+	 * returns the probability that at least one player lands on a space during a round
+	 * @param space the id of the space
+	 * @param round the round, counting from zero for the players' next turns
+	 * @return the probability
+	 */
+	public final double getHitProbability(int space, int round) {
+		return hitProbability[round * size + space];
+	}
+	
+	/**
+	 * returns an upper bound on the probability that at least one player lands on any of a set of
+	 * spaces during a round, such as an opponent landing on a color group before the player's next
+	 * turn. Each player's expected number of landings on the set, clamped to 1, is used as their
+	 * chance of landing there; it overestimates when a player can land on several of the spaces
+	 * in one turn.
+	 * @param spaces the ids of the spaces
+	 * @param round the round, counting from zero for the players' next turns
+	 * @return the bound
+	 */
+	public final double getHitProbabilityBound(BitSet spaces, int round) {
+		double miss = 1.0;
+		for (double[] row : playerRows) {
+			double hit = 0;
+			for (int s = spaces.nextSetBit(0); s >= 0 && s < size; s = spaces.nextSetBit(s + 1))
+				hit += row[round * size + s];
+			miss *= 1.0 - Math.min(hit, 1.0);
+		}
+		return 1.0 - miss;
+	}
+	
+	/**
+	 * returns the sum, over every round from firstRound up to but not including lastRound, of the
+	 * expected visits to each space multiplied by that space's weight. With the rent of each space
+	 * as its weight, this is the expected rent received from the players over those rounds.
+	 * @param weights a weight for each space, indexed by space id, of at least size() elements
+	 * @param firstRound the first round to include
+	 * @param lastRound the round after the last round to include
+	 * @return the weighted sum
+	 */
+	public final double getWeightedVisits(double[] weights, int firstRound, int lastRound) {
+		double sum = 0;
+		for (int round = firstRound; round < lastRound; round++) {
+			int offset = round * size;
+			for (int s = 0; s < size; s++)
+				sum += expectedVisits[offset + s] * weights[s];
+		}
+		return sum;
+	}
+	
+	/**
+	 * @return the number of rounds forecast
+	 */
+	public final int rounds() {
+		return rounds;
+	}
+	
+	/**
+	 * @return the number of players forecast
+	 */
+	public final int players() {
+		return positions.length;
+	}
+	
+	//whether this forecast is for the given players
+	/*package*/ final boolean isFor(int[] positions, boolean[] stayInJail) {
+		return Arrays.equals(this.positions, positions) && Arrays.equals(this.stayInJail, stayInJail);
+	}
+}
@@ -0,0 +1,81 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Forecasts where several players will land over the next few rounds, in which every player
+ * takes one turn, from a single ProbabilityTable. Players move independently, so each player's
+ * forecast is just their row of the table, and forecasts are combined space by space.
+ * 
+ * The rows for every (space, jail strategy) are cached the first time a player is forecast from
+ * there, so there are never more than 2 * size() of them, and the most recent forecast is kept
+ * so that repeated calls for the same players within a round cost nothing. Thread-safe.
+ * @see MultiPlayerForecast
+ */
+public final class MultiPlayerForecaster {
+	private final ProbabilityTable table;
+	private final int rounds;
+	//the rows for each start, indexed position * 2 + (stayInJail ? 1 : 0), each laid out [round * size() + space]
+	private final AtomicReferenceArray<double[]> rows;
+	private volatile MultiPlayerForecast last;
+	
+	/**
+	 * Constructs a new MultiPlayerForecaster
+	 * @param table the table to forecast from, which must hold at least rounds turns
+	 * @param rounds the number of rounds to forecast
+	 */
+	public MultiPlayerForecaster(ProbabilityTable table, int rounds) {
+		if (rounds < 1 || rounds > table.storage(false).depth())
+			throw new IllegalArgumentException("rounds must be between 1 and the depth of the table");
+		this.table = table;
+		this.rounds = rounds;
+		rows = new AtomicReferenceArray<double[]>(table.size() * 2);
+	}
+	
+	/**
+	 * Returns a forecast for a group of players, such as every opponent
+	 * @param positions the ID of each player's current space, including jail states
+	 * @param stayInJail the jail strategy of each player
+	 * @return the forecast
+	 */
+	public final MultiPlayerForecast forecast(int[] positions, boolean[] stayInJail) {
+		if (positions.length != stayInJail.length)
+			throw new IllegalArgumentException("positions and stayInJail must have one element for each player");
+		MultiPlayerForecast previous = last;
+		if (previous != null && previous.isFor(positions, stayInJail))
+			return previous;
+		
+		double[][] playerRows = new double[positions.length][];
+		for (int p = 0; p < positions.length; p++)
+			playerRows[p] = row(positions[p], stayInJail[p]);
+		MultiPlayerForecast forecast = new MultiPlayerForecast(Arrays.copyOf(positions, positions.length), 
+				Arrays.copyOf(stayInJail, stayInJail.length), playerRows, rounds, table.size());
+		last = forecast;
+		return forecast;
+	}
+	
+	/**
+	 * @return the number of rounds forecast
+	 */
+	public final int rounds() {
+		return rounds;
+	}
+	
+	//returns the cached row for a start, calculating it if necessary
+	private double[] row(int position, boolean stayInJail) {
+		int index = position * 2 + (stayInJail ? 1 : 0);
+		double[] row = rows.get(index);
+		if (row == null) {
+			//two threads may both calculate a row, but they calculate the same thing
+			int n = table.size();
+			row = new double[rounds * n];
+			TableStorage storage = table.storage(stayInJail);
+			for (int round = 0; round < rounds; round++)
+				storage.copyRow(round, position, row, round * n);
+			rows.compareAndSet(index, null, row);
+			row = rows.get(index);
+		}
+		return row;
+	}
+}
@@ -0,0 +1,53 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Utility for running independent pieces of a calculation, either on a ForkJoinPool
+ * or one after another on the calling thread
+ */
+/*package*/ final class ParallelTasks {
+	
+	private ParallelTasks() {
+	}
+	
+	/**
+	 * Runs every task and waits for all of them to finish, even if some of them throw.
+	 * The exception of the first task in the list which failed is then rethrown.
+	 * @param pool the pool to run the tasks on, or null to run them sequentially on this thread
+	 * @param tasks the tasks, which must not depend on each other
+	 */
+	public static final void runAll(ForkJoinPool pool, List<Runnable> tasks) {
+		if (pool == null) {
+			RuntimeException failure = null;
+			for (Runnable task : tasks) {
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					if (failure == null)
+						failure = e;
+				}
+			}
+			if (failure != null)
+				throw failure;
+			return;
+		}
+		
+		List<ForkJoinTask<?>> forkJoinTasks = new ArrayList<ForkJoinTask<?>>(tasks.size());
+		for (Runnable task : tasks)
+			forkJoinTasks.add(ForkJoinTask.adapt(task));
+		pool.invoke(ForkJoinTask.adapt(() -> {
+			for (ForkJoinTask<?> task : forkJoinTasks)
+				task.fork();
+			//quietlyJoin waits without throwing, so a failure can't leave other tasks running
+			for (ForkJoinTask<?> task : forkJoinTasks)
+				task.quietlyJoin();
+			for (ForkJoinTask<?> task : forkJoinTasks)
+				if (task.isCompletedAbnormally())
+					task.join();
+		}));
+	}
+}
@@ -0,0 +1,223 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.util.Arrays;
+
+/**
+ * Holds the mid and end probabilities summed while building a move tree.
+ * Keeping them here rather than in the ProbSpaces themselves means several move trees
+ * can be built on the same ProbBoard at once, each with its own accumulator.
+ * With compensated summation, the rounding error of each sum is kept alongside it and 
+ * added back when the sum is read.
+ * @see ProbSpace#updateProbAndRoll(ProbAccumulator, int, double, boolean)
+ */
+/*package*/ final class ProbAccumulator {
+	private final double[] midProb;
+	private final double[] endProb;
+	//the rounding errors of midProb and endProb, or null for naive summation
+	private final double[] midCompensation;
+	private final double[] endCompensation;
+	//the probability of rolling again from each space, if rolls are recorded rather than followed, or null
+	private final double[] rollProb;
+	private long nodes; //branches of the move tree visited, for instrumentation
+	
+	/**
+	 * Constructs a new ProbAccumulator with all probabilities zero
+	 * @param size the number of spaces, including jail states, on the board
+	 */
+	public ProbAccumulator(int size) {
+		this(size, Summation.NAIVE);
+	}
+	
+	/**
+	 * Constructs a new ProbAccumulator with all probabilities zero
+	 * @param size the number of spaces, including jail states, on the board
+	 * @param summation how probabilities should be added up
+	 */
+	public ProbAccumulator(int size, Summation summation) {
+		midProb = new double[size];
+		endProb = new double[size];
+		boolean compensated = summation == Summation.COMPENSATED;
+		midCompensation = compensated ? new double[size] : null;
+		endCompensation = compensated ? new double[size] : null;
+		rollProb = null;
+	}
+	
+	private ProbAccumulator(int size, boolean recordRolls) {
+		midProb = new double[size];
+		endProb = new double[size];
+		midCompensation = null;
+		endCompensation = null;
+		rollProb = new double[size];
+	}
+	
+	/**
+	 * Returns a new ProbAccumulator which records each roll again from a space instead of 
+	 * following it through the board's forward distributions, for compiling the board
+	 * @see CompiledBoard
+	 * @param size the number of spaces, including jail states, on the board
+	 * @return the accumulator
+	 */
+	public static final ProbAccumulator recordingRolls(int size) {
+		return new ProbAccumulator(size, true);
+	}
+	
+	/**
+	 * @return the number of spaces, including jail states, probabilities are held for
+	 */
+	public final int size() {
+		return midProb.length;
+	}
+	
+	/**
+	 * @return how probabilities are added up
+	 */
+	public final Summation summation() {
+		return midCompensation == null ? Summation.NAIVE : Summation.COMPENSATED;
+	}
+	
+	/**
+	 * Returns the probability that a space was landed on but not ended on
+	 * (likely because of doubles).
+	 * 
+	 * We need to store endProb and midProb separately because we will need them both:
+	 * midProb + endProb is the overall probability that a space will be landed on,
+	 * useful for single turn profit calculation.
+	 * endProb alone allows us to create a transition matrix which we can use to 
+	 * find the probability for an arbitrary number of turns in the future, not just a single turn.
+	 * @param spaceID the ID of the space
+	 * @return the probability this space was landed on but not ended on
+	 */
+	public final double midProb(int spaceID) {
+		return midCompensation == null ? midProb[spaceID] : midProb[spaceID] + midCompensation[spaceID];
+	}
+	
+	/**
+	 * @see midProb(int)
+	 * @param spaceID the ID of the space
+	 * @return the probability that this space was a player's final destination in their turn
+	 */
+	public final double endProb(int spaceID) {
+		return endCompensation == null ? endProb[spaceID] : endProb[spaceID] + endCompensation[spaceID];
+	}
+	
+	/**
+	 * Adds the specified probability to a space's total mid probability.
+	 * @param spaceID the ID of the space
+	 * @param prob the probability to add
+	 */
+	public final void addToMidProb(int spaceID, double prob) {
+		if (midCompensation == null)
+			midProb[spaceID] += prob;
+		else
+			addCompensated(midProb, midCompensation, spaceID, prob);
+	}
+	
+	/**
+	 * Adds the specified probability to a space's total end probability.
+	 * @param spaceID the ID of the space
+	 * @param prob the probability to add
+	 */
+	public final void addToEndProb(int spaceID, double prob) {
+		if (endCompensation == null)
+			endProb[spaceID] += prob;
+		else
+			addCompensated(endProb, endCompensation, spaceID, prob);
+	}
+	
+	// adds a term to sums[i] by Neumaier's method, keeping the rounding error in compensation[i]
+	private static void addCompensated(double[] sums, double[] compensation, int i, double term) {
+		double sum = sums[i];
+		double t = sum + term;
+		if (Math.abs(sum) >= Math.abs(term))
+			compensation[i] += (sum - t) + term;
+		else
+			compensation[i] += (term - t) + sum;
+		sums[i] = t;
+	}
+	
+	/**
+	 * Adds a multiple of a whole distribution to every space's mid and end probabilities
+	 * @param mid the mid probability of each space, indexed by space ID
+	 * @param end the end probability of each space, indexed by space ID
+	 * @param multiplier the multiple to add
+	 */
+	public final void addScaled(double[] mid, double[] end, double multiplier) {
+		if (midCompensation == null) {
+			for (int i = 0; i < midProb.length; i++) {
+				midProb[i] += multiplier * mid[i];
+				endProb[i] += multiplier * end[i];
+			}
+		} else {
+			for (int i = 0; i < midProb.length; i++) {
+				addCompensated(midProb, midCompensation, i, multiplier * mid[i]);
+				addCompensated(endProb, endCompensation, i, multiplier * end[i]);
+			}
+		}
+	}
+	
+	/**
+	 * @return whether rolls again are recorded with addToRollProb rather than followed
+	 */
+	public final boolean recordsRolls() {
+		return rollProb != null;
+	}
+	
+	/**
+	 * Records a roll again from a space, on an accumulator which records rolls
+	 * @param spaceID the ID of the space rolled from
+	 * @param prob the probability of the roll
+	 */
+	public final void addToRollProb(int spaceID, double prob) {
+		rollProb[spaceID] += prob;
+	}
+	
+	/**
+	 * @param spaceID the ID of the space
+	 * @return the recorded probability of rolling again from the space
+	 */
+	public final double rollProb(int spaceID) {
+		return rollProb[spaceID];
+	}
+	
+	/**
+	 * Records that branches of the move tree have been visited
+	 * @param count the number of branches
+	 */
+	public final void addNodes(int count) {
+		nodes += count;
+	}
+	
+	/**
+	 * @return the number of branches of the move tree visited since the last reset
+	 */
+	public final long nodes() {
+		return nodes;
+	}
+	
+	/**
+	 * Copies the accumulated probabilities into the given arrays
+	 * @param mid the array to receive mid probabilities, indexed by space ID
+	 * @param end the array to receive end probabilities, indexed by space ID
+	 */
+	public final void copyTo(double[] mid, double[] end) {
+		for (int i = 0; i < midProb.length; i++) {
+			mid[i] = midProb(i);
+			end[i] = endProb(i);
+		}
+	}
+	
+	/**
+	 * Resets probabilities to zero, in preparation for building a move tree
+	 */
+	public final void reset() {
+		Arrays.fill(midProb, 0.0);
+		Arrays.fill(endProb, 0.0);
+		if (midCompensation != null) {
+			Arrays.fill(midCompensation, 0.0);
+			Arrays.fill(endCompensation, 0.0);
+		}
+		if (rollProb != null)
+			Arrays.fill(rollProb, 0.0);
+		nodes = 0;
+	}
+}
@@ -1,7 +1,10 @@
 package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.benpochily.monopoly.board.Board;
 import com.benpochily.monopoly.game.Dice;
@@ -15,6 +18,20 @@ import com.benpochily.monopoly.game.Dice;
  *    of landing on each space.
  * 4. If running simulations from other starting spaces, call resetProb() to clear probabilities
  *    from the last getProbFrom() call.
+ * 
+ * The steps above share one set of probabilities, so they must not be used from more than one
+ * thread at a time. To build move trees concurrently, give each thread its own ProbAccumulator
+ * and use getProbFrom(int, boolean, ProbAccumulator) instead.
+ *
+ * The move tree is not walked in full for every starting space. On construction, the board
+ * memoizes the forward distribution (mid and end probabilities) of rolling from every
+ * (space, doubles rolled so far) state, deepest state first, so each roll only has to
+ * look one level ahead and the cost grows with the board size rather than with Dice.maxDoubles().
+ * Both the memoizing and every getProbFrom run the spaces' rules compiled into flat programs
+ * (see CompiledBoard) rather than calling through the ProbSpaces. A board which differs from
+ * another only at a few spaces can be built from it, rebuilding only the forward distributions 
+ * which can reach a changed space. A board made by uncompiled skips compiling and memoizing,
+ * for callers which only sample turns or walk deck states through the ProbSpaces.
 */
 /*package*/ final class ProbBoard {	
 	private final Board model; //the board object this ProbBoard decorates
@@ -28,14 +45,94 @@ import com.benpochily.monopoly.game.Dice;
 	 */
 	private final List<ProbSpace> board = new ArrayList<ProbSpace>(); 
 	
+	private final RollDistribution rolls; //distinct dice outcomes, computed once per board
+	
+	private final ProbAccumulator accumulator; //probabilities for getProbFrom(int, boolean) and getCalculatedProb
+	private final Summation summation; //how every accumulator on this board adds up probabilities
+	private final CompiledBoard compiled; //the rules of the spaces as flat programs, for walking move trees; null if uncompiled
+	
+	/*
+	 * Memoized forward distributions, indexed [numDoubles][start][destination]. forwardMid[d][a][b]
+	 * is the probability of passing through b (and forwardEnd[d][a][b] of ending on b) when rolling
+	 * from physical space a having already rolled d doubles this turn. Null if uncompiled.
+	 */
+	private final double[][][] forwardMid;
+	private final double[][][] forwardEnd;
+	private final LongAdder forwardNodes = new LongAdder(); //move tree branches visited while memoizing
+	
 	/**
 	 * Constructs a new ProbBoard
 	 * @param model the board object this ProbBoard should calculate probabilities for
 	 */
 	public ProbBoard(Board model) {
+		this(model, null);
+	}
+	
+	/**
+	 * Constructs a new ProbBoard, building its memoized forward distributions in parallel
+	 * @param model the board object this ProbBoard should calculate probabilities for
+	 * @param pool the pool to build on, or null to build on this thread
+	 */
+	public ProbBoard(Board model, ForkJoinPool pool) {
+		this(model, pool, Summation.NAIVE);
+	}
+	
+	/**
+	 * Constructs a new ProbBoard, building its memoized forward distributions in parallel
+	 * @param model the board object this ProbBoard should calculate probabilities for
+	 * @param pool the pool to build on, or null to build on this thread
+	 * @param summation how probabilities should be added up while walking move trees
+	 */
+	public ProbBoard(Board model, ForkJoinPool pool, Summation summation) {
+		this(model, pool, summation, null, null);
+	}
+	
+	/**
+	 * Constructs a new ProbBoard for a board which differs from the board of another only at
+	 * the given spaces. A forward distribution whose move tree never lands on a changed space
+	 * is the same on both boards, so it is shared with previous; the rest are rebuilt. 
+	 * @param model the board object this ProbBoard should calculate probabilities for, with the
+	 * same number of spaces and turns in jail as the model of previous
+	 * @param pool the pool to build on, or null to build on this thread
+	 * @param summation how probabilities should be added up while walking move trees
+	 * @param previous the board before the change, or null to build every forward distribution
+	 * @param changedSpaces the IDs of the spaces whose behavior has changed, ignored if previous is null
+	 */
+	public ProbBoard(Board model, ForkJoinPool pool, Summation summation, ProbBoard previous, BitSet changedSpaces) {
+		this(model, summation, true);
+		if (previous != null && previous.forwardMid != null && previous.summation == summation 
+				&& previous.physicalSize() == physicalSize() && previous.maxTurnsInJail() == maxTurnsInJail()
+				&& previous.forwardMid.length == forwardMid.length)
+			reuseForwardDistributions(previous, changedSpaces);
+		buildForwardDistributions(pool);
+	}
+	
+	// creates the spaces, and if walkable, compiles them and allocates the forward distributions, which are left to be built
+	private ProbBoard(Board model, Summation summation, boolean walkable) {
 		this.model = model;
+		this.summation = summation;
+		this.rolls = new RollDistribution(model.dice());
 		for (int i = 0; i < model.physicalSize() + model.maxTurnsInJail(); i++)
 			board.add(i < model.physicalSize() ? ProbSpace.createSpace(model.getSpace(i), this) : ProbSpace.createSpace(model.jail(), this, i));
+		
+		accumulator = new ProbAccumulator(size(), summation);
+		compiled = walkable ? new CompiledBoard(this) : null;
+		
+		int levels = Math.max(Dice.maxDoubles(), 1);
+		forwardMid = walkable ? new double[levels][physicalSize()][] : null;
+		forwardEnd = walkable ? new double[levels][physicalSize()][] : null;
+	}
+	
+	/**
+	 * Constructs a ProbBoard whose spaces are neither compiled nor memoized, for sampling turns 
+	 * with ProbSpace.sampleFrom or walking deck states with ProbSpace.walkDeckFrom. It costs little
+	 * more than the spaces themselves, but move trees can't be walked on it: every getProbFrom 
+	 * throws IllegalStateException.
+	 * @param model the board object this ProbBoard should represent
+	 * @return the board
+	 */
+	public static final ProbBoard uncompiled(Board model) {
+		return new ProbBoard(model, Summation.NAIVE, false);
 	}
 
 	public final ProbSpace getSpace(int id) {
@@ -46,6 +143,22 @@ import com.benpochily.monopoly.game.Dice;
 		return model.dice();
 	}
 	
+	/**
+	 * Returns the distinct outcomes of rolling this board's dice, which should be used
+	 * in preference to enumerating every roll through dice()
+	 * @return the roll distribution
+	 */
+	public final RollDistribution rolls() {
+		return rolls;
+	}
+	
+	/**
+	 * @return how probabilities are added up while walking move trees on this board
+	 */
+	public final Summation summation() {
+		return summation;
+	}
+	
 	/**
 	 * Returns the total number of the spaces on the ProbBoard,
 	 * including "virtual" spaces for each turn in jail
@@ -75,13 +188,44 @@ import com.benpochily.monopoly.game.Dice;
 	/**
 	 * Initiates a probability simulation from the specified space.
 	 * Once this method returns, the results can be obtained by calling
-	 * getProb() on each space for which results are desired.
+	 * getCalculatedProb() on each space for which results are desired.
 	 * @param spaceID The unique ID of the starting space
 	 * @param stayInJail Whether the probabilities should be calculated assuming
 	 * the player pays to leave jail immediately or stays for the full duration
 	 */
 	public final void getProbFrom(int spaceID, boolean stayInJail) {
-		board.get(spaceID).getProbFrom(stayInJail);
+		getProbFrom(spaceID, stayInJail, accumulator);
+	}
+	
+	/**
+	 * Initiates a probability simulation from the specified space, adding the results
+	 * to the given accumulator rather than the board's own. This method may be called
+	 * from several threads at once, as long as each uses its own accumulator.
+	 * @param spaceID The unique ID of the starting space
+	 * @param stayInJail Whether the probabilities should be calculated assuming
+	 * the player pays to leave jail immediately or stays for the full duration
+	 * @param acc the accumulator to add probabilities to
+	 */
+	public final void getProbFrom(int spaceID, boolean stayInJail, ProbAccumulator acc) {
+		compiled().turn(this, acc, spaceID, JailPolicy.of(stayInJail));
+	}
+	
+	/**
+	 * Initiates a probability simulation from the specified space for a player following
+	 * any jail policy, adding the results to the given accumulator.
+	 * @param spaceID The unique ID of the starting space
+	 * @param policy How the player decides whether to pay to leave jail
+	 * @param acc the accumulator to add probabilities to
+	 */
+	public final void getProbFrom(int spaceID, JailPolicy policy, ProbAccumulator acc) {
+		compiled().turn(this, acc, spaceID, policy);
+	}
+	
+	// returns the compiled board, which an uncompiled board doesn't have
+	private CompiledBoard compiled() {
+		if (compiled == null)
+			throw new IllegalStateException("move trees can't be walked on an uncompiled board");
+		return compiled;
 	}
 	
 	/**
@@ -94,15 +238,14 @@ import com.benpochily.monopoly.game.Dice;
 	 * @return the probability
 	 */
 	public final double getCalculatedProb(int spaceID, boolean mid) {
-		return mid ? board.get(spaceID).midProb() : board.get(spaceID).endProb();
+		return mid ? accumulator.midProb(spaceID) : accumulator.endProb(spaceID);
 	}
 	
 	/**
 	 * Resets all probabilities on the board to zero
 	 */
 	public final void resetProb() {
-		for (ProbSpace s : board)
-			s.resetProb();
+		accumulator.reset();
 	}
 
 	/**
@@ -114,4 +257,76 @@ import com.benpochily.monopoly.game.Dice;
 	public final ProbSpace nextSpace(ProbSpace current, int numSpaces) {
 		return getSpace((current.ID() + numSpaces) % physicalSize());
 	}
+	
+	/**
+	 * @return the number of move tree branches visited while memoizing forward distributions
+	 */
+	public final long forwardNodes() {
+		return forwardNodes.sum();
+	}
+	
+	/**
+	 * Adds the memoized outcome of rolling from a space to the probabilities on this board,
+	 * exactly as if the whole move tree below that roll had been walked.
+	 * @param acc the accumulator to add probabilities to
+	 * @param spaceID the physical space being rolled from
+	 * @param numDoubles the number of doubles rolled so far this turn
+	 * @param multiplier the probability that this roll takes place
+	 */
+	/*package*/ final void addForwardProb(ProbAccumulator acc, int spaceID, int numDoubles, double multiplier) {
+		if (acc.recordsRolls()) {
+			acc.addToRollProb(spaceID, multiplier);
+			return;
+		}
+		acc.addScaled(forwardMid[numDoubles][spaceID], forwardEnd[numDoubles][spaceID], multiplier);
+	}
+	
+	/*
+	 * Shares the forward distributions of previous which have no probability on any changed space,
+	 * since every space a move tree lands on gets some mid or end probability. A tree which reaches
+	 * a changed space through a deeper roll has that roll's probability on it too, so it is rebuilt.
+	 */
+	private void reuseForwardDistributions(ProbBoard previous, BitSet changedSpaces) {
+		for (int numDoubles = 0; numDoubles < forwardMid.length; numDoubles++) {
+			for (int start = 0; start < physicalSize(); start++) {
+				double[] mid = previous.forwardMid[numDoubles][start];
+				double[] end = previous.forwardEnd[numDoubles][start];
+				boolean reachesChange = changedSpaces.get(start);
+				for (int space = changedSpaces.nextSetBit(0); space >= 0 && space < size() && !reachesChange; space = changedSpaces.nextSetBit(space + 1))
+					reachesChange = mid[space] != 0.0 || end[space] != 0.0;
+				if (!reachesChange) {
+					forwardMid[numDoubles][start] = mid;
+					forwardEnd[numDoubles][start] = end;
+				}
+			}
+		}
+	}
+	
+	/*
+	 * Fills the forward distributions not already shared from another board. Rolling with d
+	 * doubles can only lead to another roll with d + 1 doubles, so working from the deepest level
+	 * up means every roll again encountered by CompiledBoard.roll has already been memoized. Spaces within a level are independent,
+	 * so each level can be built in parallel.
+	 */
+	private void buildForwardDistributions(ForkJoinPool pool) {
+		for (int numDoubles = forwardMid.length - 1; numDoubles >= 0; numDoubles--) {
+			List<Runnable> tasks = new ArrayList<Runnable>();
+			for (int i = 0; i < physicalSize(); i++) {
+				if (forwardMid[numDoubles][i] != null)
+					continue;
+				final int start = i, level = numDoubles;
+				tasks.add(() -> {
+					try (CalculationWorkspace workspace = CalculationWorkspace.acquire()) {
+						ProbAccumulator acc = workspace.accumulator(size(), summation);
+						compiled.roll(this, acc, start, level, 1);
+						forwardMid[level][start] = new double[size()];
+						forwardEnd[level][start] = new double[size()];
+						acc.copyTo(forwardMid[level][start], forwardEnd[level][start]);
+						forwardNodes.add(acc.nodes());
+					}
+				});
+			}
+			ParallelTasks.runAll(pool, tasks);
+		}
+	}
 }
@@ -14,22 +14,26 @@ import com.benpochily.monopoly.game.Dice;
 /**
  * A representation of a board space used to recursively build a move tree.
  * Used as a component of a ProbBoard
+ * 
+ * A space's rule for a landing is written once for each way a turn is walked: updateProbAndRoll
+ * for every outcome at once (and, through it, the compiled programs of CompiledBoard), 
+ * sampleLanding for one random outcome and walkDeckLanding for cards drawn in order. A subclass
+ * changing one must change all three.
  * @see ProbBoard
  */
 /*package*/ class ProbSpace {
 	private Space space;
 	private ProbBoard board;
-	private double midProb;
-	private double endProb;
 	
 	//mappings for static factory
 	private static final Map<SpaceType, BiFunction<Space, ProbBoard, ProbSpace>> factoryMap = new HashMap<SpaceType, BiFunction<Space, ProbBoard, ProbSpace>>() {{
 		put(SpaceType.CARD, (space, board) -> { return new CardProbSpace((CardSpace)space, board);});
 		put(SpaceType.GOTO, (space, board) -> { return new GoToJailProbSpace((GoToSpace)space, board);});
 	}};
+	private static final BiFunction<Space, ProbBoard, ProbSpace> defaultFactory = ProbSpace::new;
 	
 	public static final ProbSpace createSpace(Space space, ProbBoard board) {
-		return factoryMap.getOrDefault(space.type(), (s, b) -> { return new ProbSpace(s, b);}).apply(space, board);
+		return factoryMap.getOrDefault(space.type(), defaultFactory).apply(space, board);
 	}
 	
 	public static final ProbSpace createSpace(Jail space, ProbBoard board, int id) {
@@ -40,55 +44,44 @@ import com.benpochily.monopoly.game.Dice;
 	protected ProbSpace(Space space, ProbBoard board) {
 		this.space = space;
 		this.board = board;
-		endProb = 0.0;
-		midProb = 0.0;
 	}
 	
 	/**
 	 * Begins a recursive search of all possible move outcomes, starting from
-	 * this space. When the search has completed, all ProbSpaces in the associated
-	 * ProbabilityBoard will be populated with their probability of being landed on.
-	 * @param stayInJail Whether the probabilities should be calculated assuming a maximum-length
-	 * or minimum-length jail stay.
+	 * this space. When the search has completed, the accumulator will be populated 
+	 * with the probability of each space in the associated ProbBoard being landed on.
+	 * Only jail spaces depend on the policy.
+	 * @param acc the accumulator to add probabilities to
+	 * @param policy how the player decides whether to pay to leave jail
 	 */
-	public void getProbFrom(boolean stayInJail) {	
-		doRolls(0, 1);
-	}
-	
-	public int ID() {
-		return space.ID();
+	public void getProbFrom(ProbAccumulator acc, JailPolicy policy) {
+		board.addForwardProb(acc, ID(), 0, 1);
 	}
 	
 	/**
-	 * Returns the probability that this space will be landed on but not ended on
-	 * (likely because of doubles). This method should be used after a call to
-	 * ProbSpace.getProbabilitiesFrom() has built a move tree and summed the probabilities.
-	 * 
-	 * We need to store endProb and midProb separately because we will need them both:
-	 * midProb + endProb is the overall probability that a space will be landed on,
-	 * useful for single turn profit calculation.
-	 * endProb alone allows us to create a transition matrix which we can use to 
-	 * find the probability for an arbitrary number of turns in the future, not just a single turn.
-	 * @return the probability this space will be landed on but not ended on
-	 */	
-	public final double midProb() {
-		return midProb;
+	 * Plays a single random turn from this space, recording each space landed on.
+	 * This follows the same rules as getProbFrom, for one outcome at a time.
+	 * @param turn the record to add landings to
+	 * @param policy how the player decides whether to pay to leave jail
+	 */
+	public void sampleFrom(SampledTurn turn, JailPolicy policy) {
+		sampleRoll(turn, 0);
 	}
 	
 	/**
-	 * @see midProb()
-	 * @return the probability that this will be a player's final destination in their turn
+	 * Walks every outcome of a turn from this space with the decks in a given state,
+	 * adding the probability of each (space, deck state) reached to walk. This follows
+	 * the same rules as getProbFrom, except that cards are drawn in order rather than at random.
+	 * @param walk the walk to add probabilities to
+	 * @param deckState the positions of every deck at the start of the turn
+	 * @param policy how the player decides whether to pay to leave jail
 	 */
-	public final double endProb() {
-		return endProb;
+	public void walkDeckFrom(DeckWalk walk, int deckState, JailPolicy policy) {
+		walkDeckRoll(walk, deckState, 0, 1.0);
 	}
 	
-	/**
-	 * Resets probabilities to zero, in preparation for building a move tree
-	 */
-	public final void resetProb() {
-		endProb = 0.0;
-		midProb = 0.0;
+	public int ID() {
+		return space.ID();
 	}
 	
 	protected final ProbBoard board() {
@@ -97,50 +90,108 @@ import com.benpochily.monopoly.game.Dice;
 	
 	/**
 	 * Adds the specified probability to this space's total end probability.
+	 * @param acc the accumulator holding the totals
 	 * @param prob the probability to add
 	 */
-	protected final void addToEndProb(double prob) {
-		endProb += prob;
+	protected final void addToEndProb(ProbAccumulator acc, double prob) {
+		acc.addToEndProb(ID(), prob);
 	}
 	
 	/**
 	 * Adds the specified probability to this space's total mid probability.
+	 * @param acc the accumulator holding the totals
 	 * @param prob the probability to add
 	 */
-	protected final void addToMidProb(double prob) {
-		midProb += prob;
+	protected final void addToMidProb(ProbAccumulator acc, double prob) {
+		acc.addToMidProb(ID(), prob);
 	}
 	
 	/**
 	 * Simulates a landing on this square, updating probabilities and rolling again if necessary
+	 * @param acc the accumulator to add probabilities to
 	 * @param numDoubles the number of doubles rolled so far
 	 * @param multiplier the probability multiplier that should 
 	 * be applied to all probabilities from here on (that is,
 	 * the probability this method is called)
 	 * @param rollAgain whether we should roll again (because of doubles)
 	 */
-	protected void updateProbAndRoll(int numDoubles, double multiplier, boolean rollAgain) {
+	protected void updateProbAndRoll(ProbAccumulator acc, int numDoubles, double multiplier, boolean rollAgain) {
 		if (!rollAgain) { //if we don't need to roll again, this is the base case and we're done here
-			addToEndProb(multiplier);
+			addToEndProb(acc, multiplier);
 			return;
 		}		
-		addToMidProb(multiplier);
-		doRolls(numDoubles, multiplier);
+		addToMidProb(acc, multiplier);
+		board.addForwardProb(acc, ID(), numDoubles, multiplier);
 	}	
 	
-	private void doRolls(int numDoubles, double multiplier) {
-		/*
-		 * This is where the meat of the recursion takes place. For each possible roll of the dice,
-		 * we check for doubles-induced jail and create a branch of the recursive tree for each possible move,
-		 * passing along state information and dividing the probability multiplier to reflect the chance that
-		 * the branch is actually reached.
-		 */
-		board().dice().forEachPossibleRoll((roll, size) -> {
-			boolean isDoubles = roll.isDoubles();
-		    if (isDoubles && numDoubles >= Dice.maxDoubles() - 1) //too many doubles, jail time
-				board.jail().updateProbAndRoll(numDoubles, multiplier / size, false);
-		    else //otherwise, move a number of spaces to the next space and repeat
-		    	board.nextSpace(this, roll.getTotal()).updateProbAndRoll(isDoubles ? numDoubles + 1: numDoubles, multiplier / size, isDoubles);
-		});
+	/**
+	 * Plays out one random outcome of landing on this square, recording the landing
+	 * and rolling again if necessary, as updateProbAndRoll does for every outcome
+	 * @param turn the record to add landings to
+	 * @param numDoubles the number of doubles rolled so far
+	 * @param rollAgain whether we should roll again (because of doubles)
+	 */
+	protected void sampleLanding(SampledTurn turn, int numDoubles, boolean rollAgain) {
+		if (!rollAgain) {
+			turn.addEnd(ID());
+			return;
+		}
+		turn.addMid(ID());
+		sampleRoll(turn, numDoubles);
+	}
+	
+	/**
+	 * Rolls the dice once from this space and plays out the outcome, as CompiledBoard.roll does for
+	 * every outcome
+	 * @param turn the record to add landings to
+	 * @param numDoubles the number of doubles rolled so far
+	 */
+	/*package*/ final void sampleRoll(SampledTurn turn, int numDoubles) {
+		RollDistribution rolls = board.rolls();
+		int i = rolls.sample(turn.random());
+		boolean isDoubles = rolls.isDoubles(i);
+		if (isDoubles && numDoubles >= Dice.maxDoubles() - 1)
+			board.jail().sampleLanding(turn, numDoubles, false);
+		else
+			board.nextSpace(this, rolls.total(i)).sampleLanding(turn, isDoubles ? numDoubles + 1 : numDoubles, isDoubles);
+	}
+	
+	/**
+	 * Walks a landing on this square with the decks in a given state, as updateProbAndRoll does
+	 * with decks drawn at random
+	 * @param walk the walk to add probabilities to
+	 * @param deckState the positions of every deck
+	 * @param numDoubles the number of doubles rolled so far
+	 * @param multiplier the probability this method is called
+	 * @param rollAgain whether we should roll again (because of doubles)
+	 */
+	protected void walkDeckLanding(DeckWalk walk, int deckState, int numDoubles, double multiplier, boolean rollAgain) {
+		if (!rollAgain) {
+			walk.addToEndProb(ID(), deckState, multiplier);
+			return;
+		}
+		walk.addToMidProb(ID(), deckState, multiplier);
+		walkDeckRoll(walk, deckState, numDoubles, multiplier);
+	}
+	
+	/**
+	 * Rolls the dice from this space and walks every outcome with the decks in a given state,
+	 * as CompiledBoard.roll does with decks drawn at random. Nothing is memoized, since the outcome 
+	 * depends on the deck state.
+	 * @param walk the walk to add probabilities to
+	 * @param deckState the positions of every deck
+	 * @param numDoubles the number of doubles rolled so far
+	 * @param multiplier the probability that this roll takes place
+	 */
+	/*package*/ final void walkDeckRoll(DeckWalk walk, int deckState, int numDoubles, double multiplier) {
+		RollDistribution rolls = board.rolls();
+		for (int i = 0; i < rolls.size(); i++) {
+			boolean isDoubles = rolls.isDoubles(i);
+			if (isDoubles && numDoubles >= Dice.maxDoubles() - 1)
+				board.jail().walkDeckLanding(walk, deckState, numDoubles, multiplier * rolls.probability(i), false);
+			else
+				board.nextSpace(this, rolls.total(i)).walkDeckLanding(walk, deckState, isDoubles ? numDoubles + 1 : numDoubles, 
+						multiplier * rolls.probability(i), isDoubles);
+		}
 	}
 }
@@ -1,5 +1,12 @@
 package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
 import org.ejml.simple.SimpleMatrix;
 
 import com.benpochily.monopoly.board.Board;
@@ -15,6 +22,24 @@ import com.benpochily.monopoly.board.Board;
 	private double[][] midMatrixJail;
 	private double[] steadyState;
 	private double[] steadyStateJail;
+	//sparse copies of the Markov matrices, of the mid matrices and of Markov + mid, for propagating probabilities
+	private SparseMatrix sparseMarkov;
+	private SparseMatrix sparseMid;
+	private SparseMatrix sparseOneTurn;
+	private SparseMatrix sparseMarkovJail;
+	private SparseMatrix sparseMidJail;
+	private SparseMatrix sparseOneTurnJail;
+	private final SteadyStateSolver solver;
+	//steady states to start the solver from, may be null
+	private final double[] initialGuess;
+	private final double[] initialGuessJail;
+	private SteadyStateSolution solution;
+	private SteadyStateSolution solutionJail;
+	private final ProbabilityTableListener listener;
+	//the jail policies followed in place of the short and long jail stays
+	private final JailPolicy policy;
+	private final JailPolicy policyJail;
+	private final LongAdder nodes = new LongAdder(); //move tree branches visited building transition rows
 
 	/**
 	 * Constructs a new ProbabilityCalculator and immediately calculates the
@@ -24,17 +49,268 @@ import com.benpochily.monopoly.board.Board;
 	 *            The board for which probabilities should be calculated
 	 */
 	public ProbabilityCalculator(Board board) {
-		this.board = new ProbBoard(board);
+		this(board, null);
+	}
+	
+	/**
+	 * Constructs a new ProbabilityCalculator and immediately calculates the
+	 * exact probabilities for the specified board, in parallel. 
+	 * @see ProbabilityCalculator(Board, ForkJoinPool, SteadyStateSolver, SteadyStateSolution, SteadyStateSolution)
+	 * 
+	 * @param board
+	 *            The board for which probabilities should be calculated
+	 * @param pool
+	 *            The pool to calculate on, or null to calculate on this thread
+	 */
+	public ProbabilityCalculator(Board board, ForkJoinPool pool) {
+		this(board, pool, ProbabilityTableListener.NONE);
+	}
+	
+	/**
+	 * Constructs a new ProbabilityCalculator and immediately calculates the
+	 * exact probabilities for the specified board, in parallel, reporting how
+	 * long each phase took to a listener. 
+	 * @see ProbabilityCalculator(Board, ForkJoinPool, SteadyStateSolver, SteadyStateSolution, SteadyStateSolution)
+	 * 
+	 * @param board
+	 *            The board for which probabilities should be calculated
+	 * @param pool
+	 *            The pool to calculate on, or null to calculate on this thread
+	 * @param listener
+	 *            The listener to report to
+	 */
+	public ProbabilityCalculator(Board board, ForkJoinPool pool, ProbabilityTableListener listener) {
+		this(board, pool, listener, Summation.NAIVE);
+	}
+	
+	/**
+	 * Constructs a new ProbabilityCalculator and immediately calculates the
+	 * exact probabilities for the specified board, in parallel, adding up
+	 * probabilities in the move tree and in the tables it returns as specified. 
+	 * @see ProbabilityCalculator(Board, ForkJoinPool, ProbabilityTableListener)
+	 * 
+	 * @param board
+	 *            The board for which probabilities should be calculated
+	 * @param pool
+	 *            The pool to calculate on, or null to calculate on this thread
+	 * @param listener
+	 *            The listener to report to
+	 * @param summation
+	 *            How probabilities should be added up
+	 */
+	public ProbabilityCalculator(Board board, ForkJoinPool pool, ProbabilityTableListener listener, Summation summation) {
+		this(board, pool, listener, summation, new DenseSteadyStateSolver());
+	}
+	
+	/**
+	 * Constructs a new ProbabilityCalculator, adding up probabilities as specified and finding 
+	 * the steady state with solver
+	 * @param board The board for which probabilities should be calculated
+	 * @param pool The pool to calculate on, or null to calculate on the calling thread
+	 * @param listener The listener to report measurements to
+	 * @param summation How probabilities should be added up
+	 * @param solver The solver to find the steady state with
+	 */
+	public ProbabilityCalculator(Board board, ForkJoinPool pool, ProbabilityTableListener listener, Summation summation, SteadyStateSolver solver) {
+		this(board, pool, solver, null, null, null, null, listener, summation);
+	}
+	
+	/**
+	 * Constructs a new ProbabilityCalculator and immediately calculates the
+	 * exact probabilities for the specified board, in parallel. Every row of
+	 * both transition tables is an independent task, as is each steady state solve,
+	 * so the parallelism of the pool determines how many run at once.
+	 * 
+	 * @param board
+	 *            The board for which probabilities should be calculated
+	 * @param pool
+	 *            The pool to calculate on, or null to calculate on this thread
+	 * @param solver
+	 *            The strategy used to solve for the steady states
+	 * @param initialGuess
+	 *            A previous solution to warm-start the short jail stay steady state 
+	 *            from (usually from a similar board), or null
+	 * @param initialGuessJail
+	 *            A previous solution to warm-start the long jail stay steady state
+	 *            from, or null
+	 */
+	public ProbabilityCalculator(Board board, ForkJoinPool pool, SteadyStateSolver solver, SteadyStateSolution initialGuess, SteadyStateSolution initialGuessJail) {
+		this(board, pool, solver, initialGuess == null ? null : initialGuess.distribution(), 
+				initialGuessJail == null ? null : initialGuessJail.distribution(), null, null, ProbabilityTableListener.NONE, Summation.NAIVE);
+	}
+	
+	/**
+	 * Constructs a new ProbabilityCalculator for a board which differs from the board
+	 * of a previously calculated table only at the given spaces. Only the rows of the 
+	 * transition tables which start at or can land on a changed space are recalculated; every
+	 * other row is copied from the previous table, unless it was loaded from a version 1 snapshot or
+	 * estimated, in which case every row is recalculated. Likewise only the forward distributions 
+	 * which can reach a changed space are rebuilt, if the previous table was built here; see
+	 * ProbBoard. The jail states follow the same policies as in the previous table. The steady
+	 * states are then found by iteration, starting from those of the previous table. Measurements
+	 * are reported to the previous table's listener.
+	 * 
+	 * @param board
+	 *            The changed board, which must have the same number of spaces and
+	 *            turns in jail as the previous board
+	 * @param pool
+	 *            The pool to calculate on, or null to calculate on this thread
+	 * @param previous
+	 *            The table calculated for the board before the change
+	 * @param changedSpaces
+	 *            The IDs of the spaces whose behavior has changed
+	 */
+	public ProbabilityCalculator(Board board, ForkJoinPool pool, ProbabilityTable previous, BitSet changedSpaces) {
+		this(board, pool, previous, changedSpaces, new IterativeSteadyStateSolver());
+	}
+	
+	/**
+	 * Constructs a new ProbabilityCalculator for a board which differs from the board
+	 * of a previously calculated table only at the given spaces, as 
+	 * ProbabilityCalculator(Board, ForkJoinPool, ProbabilityTable, BitSet), finding the
+	 * steady states with solver, starting from those of the previous table.
+	 * 
+	 * @param board
+	 *            The changed board, which must have the same number of spaces and
+	 *            turns in jail as the previous board
+	 * @param pool
+	 *            The pool to calculate on, or null to calculate on this thread
+	 * @param previous
+	 *            The table calculated for the board before the change
+	 * @param changedSpaces
+	 *            The IDs of the spaces whose behavior has changed
+	 * @param solver
+	 *            The strategy used to solve for the steady states
+	 * @throws IllegalArgumentException
+	 *            if previous is not an exact table for a board of the same number of 
+	 *            spaces and turns in jail
+	 */
+	public ProbabilityCalculator(Board board, ForkJoinPool pool, ProbabilityTable previous, BitSet changedSpaces, SteadyStateSolver solver) {
+		this(board, pool, solver, normalizedSteadyState(checkPrevious(board, previous), false), normalizedSteadyState(previous, true),
+				previous, changedSpaces, previous.listener(), Summation.NAIVE);
+	}
+	
+	// checks that the rows of a previous table line up with the states of a board
+	private static ProbabilityTable checkPrevious(Board board, ProbabilityTable previous) {
+		if (previous.model() != TableModel.EXACT)
+			throw new IllegalArgumentException("only an exact table can be built on, not a table of model " + previous.model());
+		if (previous.physicalSize() != board.physicalSize() || previous.maxTurnsInJail() != board.maxTurnsInJail())
+			throw new IllegalArgumentException("the previous table has " + previous.physicalSize() + " spaces and " + previous.maxTurnsInJail() 
+					+ " turns in jail, but the board has " + board.physicalSize() + " and " + board.maxTurnsInJail());
+		return previous;
+	}
+	
+	private ProbabilityCalculator(Board board, ForkJoinPool pool, SteadyStateSolver solver, double[] initialGuess, double[] initialGuessJail,
+			ProbabilityTable previous, BitSet changedSpaces, ProbabilityTableListener listener, Summation summation) {
+		this.solver = solver;
+		this.initialGuess = initialGuess;
+		this.initialGuessJail = initialGuessJail;
+		this.listener = listener;
+		this.policy = previous == null ? JailPolicy.of(false) : previous.policy(false);
+		this.policyJail = previous == null ? JailPolicy.of(true) : previous.policy(true);
+		long start = System.nanoTime();
+		this.board = previous == null || previous.board() == null ? new ProbBoard(board, pool, summation)
+				: new ProbBoard(board, pool, summation, previous.board(), changedSpaces);
+		start = phaseCompleted(BuildPhase.FORWARD_DISTRIBUTIONS, start);
 
 		/*
 		 * It's okay to do all this calculation in the constructor so the
 		 * containing ProbabilityTable can initialize its immutable state. Lazy
 		 * calculation is tempting but we'd rather have immutability.
 		 */
-		buildTransitionTable(false);
-		buildTransitionTable(true);
-		solveSteadyState(false);
-		solveSteadyState(true);
+		int n = this.board.size();
+		double[][] tableMid = new double[n][n];
+		double[][] tableEnd = new double[n][n];
+		double[][] tableMidJail = new double[n][n];
+		double[][] tableEndJail = new double[n][n];
+		List<Runnable> rows = new ArrayList<Runnable>();
+		rows.addAll(transitionRows(false, tableMid, tableEnd, previous, changedSpaces));
+		rows.addAll(transitionRows(true, tableMidJail, tableEndJail, previous, changedSpaces));
+		ParallelTasks.runAll(pool, rows);
+		setTransitionTable(false, tableMid, tableEnd);
+		setTransitionTable(true, tableMidJail, tableEndJail);
+		start = phaseCompleted(BuildPhase.TRANSITION_TABLES, start);
+		listener.moveTreeWalked(this.board.forwardNodes() + nodes.sum());
+		listener.transitionTableBuilt(false, n, sparseMarkov.nonZeros());
+		listener.transitionTableBuilt(true, n, sparseMarkovJail.nonZeros());
+		
+		ParallelTasks.runAll(pool, Arrays.<Runnable>asList(() -> solveSteadyState(false), () -> solveSteadyState(true)));
+		phaseCompleted(BuildPhase.STEADY_STATES, start);
+	}
+	
+	/**
+	 * Constructs a new ProbabilityCalculator for the same board as another, for players
+	 * following any pair of jail policies in place of the short and long jail stays. Only
+	 * the rows of the jail states depend on the policy, so every other row is shared with
+	 * components and only the jail rows are walked. The steady states are then solved
+	 * with the same solver as components.
+	 * 
+	 * @param components
+	 *            A calculator for the board built with the usual short and long jail stays
+	 * @param pool
+	 *            The pool to calculate on, or null to calculate on this thread
+	 * @param policy
+	 *            The policy to calculate in place of the short jail stay (stayInJail false)
+	 * @param policyJail
+	 *            The policy to calculate in place of the long jail stay (stayInJail true)
+	 */
+	public ProbabilityCalculator(ProbabilityCalculator components, ForkJoinPool pool, JailPolicy policy, JailPolicy policyJail) {
+		this.board = components.board;
+		this.solver = components.solver;
+		this.initialGuess = components.solution.distribution();
+		this.initialGuessJail = components.solutionJail.distribution();
+		this.listener = components.listener;
+		this.policy = policy;
+		this.policyJail = policyJail;
+		long start = System.nanoTime();
+		
+		int n = board.size();
+		double[][] tableMid = new double[n][];
+		double[][] tableEnd = new double[n][];
+		double[][] tableMidJail = new double[n][];
+		double[][] tableEndJail = new double[n][];
+		List<Runnable> rows = new ArrayList<Runnable>();
+		rows.addAll(policyRows(components, policy, tableMid, tableEnd));
+		rows.addAll(policyRows(components, policyJail, tableMidJail, tableEndJail));
+		ParallelTasks.runAll(pool, rows);
+		setTransitionTable(false, tableMid, tableEnd);
+		setTransitionTable(true, tableMidJail, tableEndJail);
+		start = phaseCompleted(BuildPhase.TRANSITION_TABLES, start);
+		listener.moveTreeWalked(nodes.sum());
+		listener.transitionTableBuilt(false, n, sparseMarkov.nonZeros());
+		listener.transitionTableBuilt(true, n, sparseMarkovJail.nonZeros());
+		
+		ParallelTasks.runAll(pool, Arrays.<Runnable>asList(() -> solveSteadyState(false), () -> solveSteadyState(true)));
+		phaseCompleted(BuildPhase.STEADY_STATES, start);
+	}
+	
+	/**
+	 * @return the listener measurements are reported to
+	 */
+	public final ProbabilityTableListener listener() {
+		return listener;
+	}
+	
+	/**
+	 * @param stayInJail the jail strategy
+	 * @return the jail policy followed in place of that strategy's jail stay
+	 */
+	public final JailPolicy policy(boolean stayInJail) {
+		return stayInJail ? policyJail : policy;
+	}
+	
+	/**
+	 * @return the board whose move trees this calculator walks
+	 */
+	public final ProbBoard board() {
+		return board;
+	}
+	
+	/**
+	 * @return how probabilities are added up, both in the move tree and in the tables returned
+	 */
+	public final Summation summation() {
+		return board.summation();
 	}
 	
 	/**
@@ -43,34 +319,145 @@ import com.benpochily.monopoly.board.Board;
 	 * 
 	 * @param depth
 	 *            How many turns in the future the table should be calculated for
-	 * @return a three-dimensional array of doubles, indexed as follows: To find
+	 * @return a flat array of doubles, indexed as follows: To find
 	 *         the probability that a player starting on the space with ID A
-	 *         will land on space with ID B x turns from now, use [x][A][B]
+	 *         will land on space with ID B x turns from now, use
+	 *         [(x * size() + A) * size() + B]
+	 * @throws IllegalArgumentException
+	 *            if the table would hold more than Integer.MAX_VALUE probabilities
 	 */
-	public final double[][][] getTable(int depth, boolean stayInJail) {
-		double[][][] result = new double[depth][board.size()][board.size()];
-		SimpleMatrix markovMatrix = new SimpleMatrix(stayInJail ? markovMatrixJail : this.markovMatrix);
-		SimpleMatrix midMatrix = new SimpleMatrix(stayInJail ? midMatrixJail : this.midMatrix);
-		SimpleMatrix intermediateMarkov = markovMatrix.copy();
-		SimpleMatrix intermediateMid = midMatrix.copy();
+	public final double[] getTable(int depth, boolean stayInJail) {
+		int n = board.size();
+		double[] result = new double[TableStorage.length(depth, n)];
+		SparseMatrix markovMatrix = stayInJail ? sparseMarkovJail : sparseMarkov;
+		SparseMatrix oneTurn = stayInJail ? sparseOneTurnJail : sparseOneTurn;
+		//the powers of the Markov matrix are only working space, so they come from a workspace of this thread
+		try (CalculationWorkspace workspace = CalculationWorkspace.acquire()) {
+			double[] intermediateMarkov = workspace.scratch(0, n * n);
+			double[] nextMarkov = workspace.scratch(1, n * n);
+			double[] compensation = summation() == Summation.COMPENSATED ? workspace.scratch(2, n) : null;
+			for (int i = 0; i < n; i++)
+				intermediateMarkov[i * n + i] = 1.0;
 
-		for (int turn = 0; turn < depth; turn++) {
-			/*
-			 * For each turn: 
-			 * 1. copy the Markov matrix into final storage in
-			 * the appropriate place, adding middle probabilities 
-			 * 2. Set the mid probabilities to be added next turn, by multiplying the current
-			 * Markov matrix by midMatrix 
-			 * 3. calculate the next turn's Markov matrix by multiplying this turn's by our 
-			 * original, one-turn matrix
-			 */
-			for (int i = 0; i < board.size(); i++) {
-				for (int j = 0; j < board.size(); j++) {
-					result[turn][i][j] = intermediateMarkov.get(i, j) + intermediateMid.get(i, j);
+			for (int turn = 0; turn < depth; turn++) {
+				/*
+				 * For each turn, with M^x the Markov matrix raised to the number of turns so far: 
+				 * 1. The probabilities for this turn are M^(x+1) + M^x * mid, which is
+				 * M^x multiplied by the one-turn matrix M + mid 
+				 * 2. calculate the next turn's power by multiplying this turn's by our 
+				 * original, one-turn Markov matrix
+				 * Both products are dense rows times a sparse matrix.
+				 */
+				if (compensation == null) {
+					oneTurn.multiplyRows(intermediateMarkov, result, turn * n * n);
+					markovMatrix.multiplyRows(intermediateMarkov, nextMarkov, 0);
+				} else {
+					oneTurn.multiplyRowsCompensated(intermediateMarkov, result, turn * n * n, compensation);
+					markovMatrix.multiplyRowsCompensated(intermediateMarkov, nextMarkov, 0, compensation);
+				}
+				double[] temp = intermediateMarkov;
+				intermediateMarkov = nextMarkov;
+				nextMarkov = temp;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns the probabilities for a number of turns in the future from a single
+	 * starting space. Only one row vector is propagated, so this takes O(depth * nonzeros)
+	 * time and O(size()) working memory rather than a full table.
+	 * 
+	 * @param origin
+	 *            The ID of the starting space
+	 * @param depth
+	 *            How many turns in the future the row should be calculated for
+	 * @return a flat array of doubles, indexed as follows: To find the probability
+	 *         that the player will land on space with ID B x turns from now, use
+	 *         [x * size() + B]
+	 */
+	public final double[] getRow(int origin, int depth, boolean stayInJail) {
+		int n = board.size();
+		double[] result = new double[depth * n];
+		SparseMatrix markovMatrix = stayInJail ? sparseMarkovJail : sparseMarkov;
+		SparseMatrix oneTurn = stayInJail ? sparseOneTurnJail : sparseOneTurn;
+		try (CalculationWorkspace workspace = CalculationWorkspace.acquire()) {
+			double[] intermediateMarkov = workspace.scratch(0, n);
+			double[] nextMarkov = workspace.scratch(1, n);
+			double[] compensation = summation() == Summation.COMPENSATED ? workspace.scratch(2, n) : null;
+			intermediateMarkov[origin] = 1.0;
+		
+			for (int turn = 0; turn < depth; turn++) {
+				if (compensation == null) {
+					oneTurn.multiply(intermediateMarkov, 0, result, turn * n);
+					markovMatrix.multiply(intermediateMarkov, 0, nextMarkov, 0);
+				} else {
+					oneTurn.multiplyCompensated(intermediateMarkov, 0, result, turn * n, compensation);
+					markovMatrix.multiplyCompensated(intermediateMarkov, 0, nextMarkov, 0, compensation);
 				}
+				double[] temp = intermediateMarkov;
+				intermediateMarkov = nextMarkov;
+				nextMarkov = temp;
 			}
-			intermediateMid = intermediateMarkov.mult(midMatrix);
-			intermediateMarkov = intermediateMarkov.mult(markovMatrix);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the probabilities for a single turn in the future, without calculating
+	 * any of the turns before it. The Markov matrix is raised to the required power
+	 * by repeated squaring, so this takes O(log turn) matrix multiplications.
+	 * 
+	 * @param turn
+	 *            The turn to calculate, counting from zero as in getTable
+	 * @return a flat array of doubles, indexed as follows: To find the probability
+	 *         that a player starting on the space with ID A will land on space 
+	 *         with ID B, use [A * size() + B]
+	 */
+	public final double[] getProbabilityAt(int turn, boolean stayInJail) {
+		return getProbabilitiesAt(new int[] { turn }, stayInJail)[0];
+	}
+	
+	/**
+	 * Returns the probabilities for several turns in the future. Powers of the Markov 
+	 * matrix are shared between turns, and each turn is reached from the previous one,
+	 * so the cost depends on the largest turn and the gaps between turns rather than
+	 * on their number.
+	 * 
+	 * @param turns
+	 *            The turns to calculate, counting from zero as in getTable, in
+	 *            ascending order
+	 * @return one flat array for each requested turn, in the same order, indexed
+	 *         as in getProbabilityAt
+	 */
+	public final double[][] getProbabilitiesAt(int[] turns, boolean stayInJail) {
+		SimpleMatrix markovMatrix = new SimpleMatrix(stayInJail ? markovMatrixJail : this.markovMatrix);
+		/*
+		 * The probabilities for turn x are M^(x+1) + M^x * mid, where M is the Markov matrix, 
+		 * so every turn is M^x multiplied by the same one-turn matrix M + mid. 
+		 */
+		SimpleMatrix oneTurn = markovMatrix.plus(new SimpleMatrix(stayInJail ? midMatrixJail : this.midMatrix));
+		
+		List<SimpleMatrix> squares = new ArrayList<SimpleMatrix>(); //squares.get(k) is M^(2^k)
+		squares.add(markovMatrix);
+		SimpleMatrix power = SimpleMatrix.identity(board.size());
+		int powerTurn = 0;
+		
+		double[][] result = new double[turns.length][];
+		for (int i = 0; i < turns.length; i++) {
+			if (turns[i] < powerTurn)
+				throw new IllegalArgumentException("turns must be in ascending order");
+			
+			// advance from M^powerTurn to M^turns[i], one set bit of the gap at a time
+			int gap = turns[i] - powerTurn;
+			for (int bit = 0; gap >> bit != 0; bit++) {
+				if (bit == squares.size())
+					squares.add(squares.get(bit - 1).mult(squares.get(bit - 1)));
+				if ((gap >> bit & 1) == 1)
+					power = power.mult(squares.get(bit));
+			}
+			powerTurn = turns[i];
+			result[i] = flatten(power.mult(oneTurn));
 		}
 		return result;
 	}
@@ -84,47 +471,179 @@ import com.benpochily.monopoly.board.Board;
 	public final double[] getSteadyState(boolean jail) {
 		return jail ? steadyStateJail : steadyState;
 	}
+	
+	/**
+	 * Returns the solution from which a steady state was calculated, including the number
+	 * of iterations and the residual. Its distribution does not include mid probabilities.
+	 * @param jail true to get the solution with long jail stay, false otherwise
+	 * @return the solution
+	 */
+	public final SteadyStateSolution getSteadyStateSolution(boolean jail) {
+		return jail ? solutionJail : solution;
+	}
+	
+	/**
+	 * Returns the one-turn Markov matrix: the probability of ending a turn on each
+	 * space, indexed [start][end]
+	 * @param stayInJail true for the matrix with long jail stay, false otherwise
+	 * @return the matrix, which must not be modified
+	 */
+	public final double[][] getMarkovMatrix(boolean stayInJail) {
+		return stayInJail ? markovMatrixJail : markovMatrix;
+	}
+	
+	/**
+	 * Returns the one-turn matrix of mid probabilities: the probability of landing
+	 * on, but not ending on, each space, indexed [start][space]
+	 * @param stayInJail true for the matrix with long jail stay, false otherwise
+	 * @return the matrix, which must not be modified
+	 */
+	public final double[][] getMidMatrix(boolean stayInJail) {
+		return stayInJail ? midMatrixJail : midMatrix;
+	}
+	
+	/**
+	 * Returns a sparse copy of the one-turn Markov matrix
+	 * @param stayInJail true for the matrix with long jail stay, false otherwise
+	 * @return the matrix
+	 */
+	public final SparseMatrix getSparseMarkovMatrix(boolean stayInJail) {
+		return stayInJail ? sparseMarkovJail : sparseMarkov;
+	}
+	
+	/**
+	 * Returns a sparse copy of the one-turn matrix of mid probabilities
+	 * @param stayInJail true for the matrix with long jail stay, false otherwise
+	 * @return the matrix
+	 */
+	public final SparseMatrix getSparseMidMatrix(boolean stayInJail) {
+		return stayInJail ? sparseMidJail : sparseMid;
+	}
+	
+	/**
+	 * Returns a sparse copy of the one-turn Markov matrix plus the one-turn matrix of
+	 * mid probabilities, which gives a turn's probabilities when multiplied by the
+	 * Markov matrix raised to the number of turns before it
+	 * @param stayInJail true for the matrix with long jail stay, false otherwise
+	 * @return the matrix
+	 */
+	public final SparseMatrix getSparseOneTurnMatrix(boolean stayInJail) {
+		return stayInJail ? sparseOneTurnJail : sparseOneTurn;
+	}
+	
+	/**
+	 * Returns the number of states in the Markov chain: one for each physical
+	 * space plus one for each turn in jail
+	 * @return the size
+	 */
+	public final int size() {
+		return board.size();
+	}
 
-	// runs probability simulations from each space on the board to produce
-	// Markov matrix
-	private void buildTransitionTable(boolean stayInJail) {
-		double[][] tableMid = new double[this.board.size()][this.board.size()];
-		double[][] tableEnd = new double[this.board.size()][this.board.size()];
+	// returns a task for each space on the board, which runs a probability simulation
+	// from that space to fill its row of the Markov matrix. If there is a previous table
+	// which kept its mid matrices, rows which neither start nor land on a changed space 
+	// are copied from it instead.
+	private List<Runnable> transitionRows(boolean stayInJail, double[][] tableMid, double[][] tableEnd, ProbabilityTable previous, BitSet changedSpaces) {
+		List<Runnable> rows = new ArrayList<Runnable>();
 		for (int i = 0; i < board.size(); i++) {
-			board.getProbFrom(i, stayInJail);
-			for (int j = 0; j < board.size(); j++) {
-				tableMid[i][j] = board.getCalculatedProb(j, true);
-				tableEnd[i][j] = board.getCalculatedProb(j, false);
+			final int start = i;
+			if (previous != null && previous.midMatrix(stayInJail) != null && !changedSpaces.get(start) 
+					&& !previous.oneTurnMatrix(stayInJail).rowIntersects(start, changedSpaces)) {
+				rows.add(() -> {
+					previous.markovMatrix(stayInJail).copyRow(start, tableEnd[start]);
+					previous.midMatrix(stayInJail).copyRow(start, tableMid[start]);
+				});
+			} else {
+				rows.add(() -> {
+					try (CalculationWorkspace workspace = CalculationWorkspace.acquire()) {
+						ProbAccumulator acc = workspace.accumulator(board.size(), board.summation());
+						board.getProbFrom(start, policy(stayInJail), acc);
+						acc.copyTo(tableMid[start], tableEnd[start]);
+						nodes.add(acc.nodes());
+					}
+				});
 			}
-			board.resetProb();
 		}
+		return rows;
+	}
+	
+	// reports a phase which began at the given time, and returns the time it completed
+	private long phaseCompleted(BuildPhase phase, long start) {
+		long end = System.nanoTime();
+		listener.phaseCompleted(phase, end - start);
+		return end;
+	}
+	
+	// returns a task for each jail state, which runs a probability simulation from it under
+	// a jail policy to fill its row. Rows of physical spaces don't depend on the policy, so
+	// they are shared with the calculator's short jail stay matrices, which are never modified.
+	private List<Runnable> policyRows(ProbabilityCalculator components, JailPolicy policy, double[][] tableMid, double[][] tableEnd) {
+		List<Runnable> rows = new ArrayList<Runnable>();
+		for (int i = 0; i < board.physicalSize(); i++) {
+			tableMid[i] = components.midMatrix[i];
+			tableEnd[i] = components.markovMatrix[i];
+		}
+		for (int i = board.physicalSize(); i < board.size(); i++) {
+			final int start = i;
+			tableMid[start] = new double[board.size()];
+			tableEnd[start] = new double[board.size()];
+			rows.add(() -> {
+				try (CalculationWorkspace workspace = CalculationWorkspace.acquire()) {
+					ProbAccumulator acc = workspace.accumulator(board.size(), board.summation());
+					board.getProbFrom(start, policy, acc);
+					acc.copyTo(tableMid[start], tableEnd[start]);
+					nodes.add(acc.nodes());
+				}
+			});
+		}
+		return rows;
+	}
+	
+	// a table's steady state scaled to sum to one, as an estimate of its steady state without mid probabilities
+	private static double[] normalizedSteadyState(ProbabilityTable table, boolean stayInJail) {
+		int n = table.markovMatrix(stayInJail).size();
+		double[] result = new double[n];
+		double sum = 0;
+		for (int i = 0; i < n; i++)
+			sum += result[i] = table.getSteadyState(i, stayInJail);
+		for (int i = 0; i < n; i++)
+			result[i] /= sum;
+		return result;
+	}
 
+	// stores a completed Markov matrix and matrix of mid probabilities
+	private void setTransitionTable(boolean stayInJail, double[][] tableMid, double[][] tableEnd) {
 		if (stayInJail) {
 			markovMatrixJail = tableEnd;
 			midMatrixJail = tableMid;
+			sparseMarkovJail = SparseMatrix.fromDense(tableEnd);
+			sparseMidJail = SparseMatrix.fromDense(tableMid);
+			sparseOneTurnJail = SparseMatrix.sum(tableEnd, tableMid);
 		} else {
 			markovMatrix = tableEnd;
 			midMatrix = tableMid;
+			sparseMarkov = SparseMatrix.fromDense(tableEnd);
+			sparseMid = SparseMatrix.fromDense(tableMid);
+			sparseOneTurn = SparseMatrix.sum(tableEnd, tableMid);
 		}
 	}
 
+	// copies a square matrix into a flat array, row by row
+	private static double[] flatten(SimpleMatrix matrix) {
+		int n = matrix.getNumRows();
+		double[] result = new double[n * n];
+		for (int i = 0; i < n; i++)
+			for (int j = 0; j < n; j++)
+				result[i * n + j] = matrix.get(i, j);
+		return result;
+	}
+
 	// solves the Markov matrix for steady state probabilities
 	private void solveSteadyState(boolean stayInJail) {
-		// build main part of matrix by translating Markov matrix and adjusting coefficients
-		SimpleMatrix toSolve = new SimpleMatrix(board.size() + 1, board.size());
-		for (int i = 0; i < board.size(); i++)
-			for (int j = 0; j < board.size(); j++)
-				toSolve.set(i, j, i == j ? stayInJail ? markovMatrixJail[j][i] - 1 : markovMatrix[j][i] - 1 : stayInJail ? markovMatrixJail[j][i] : markovMatrix[j][i]);
-
-		// add final equation, a + b + c + d... = 1
-		for (int i = 0; i < board.size(); i++)
-			toSolve.set(board.size(), i, 1);
-
-		// right side of linear system
-		SimpleMatrix rightMatrix = new SimpleMatrix(board.size() + 1, 1);
-		rightMatrix.set(board.size(), 0, 1);
-
-		SimpleMatrix result = toSolve.solve(rightMatrix);
+		double[] previous = stayInJail ? initialGuessJail : initialGuess;
+		SteadyStateSolution solution = solver.solve(stayInJail ? markovMatrixJail : markovMatrix, stayInJail ? sparseMarkovJail : sparseMarkov, previous);
+		double[] result = solution.distribution();
 
 		/*
 		 * add the mid probabilities back in: For each calculated steady state
@@ -132,19 +651,17 @@ import com.benpochily.monopoly.board.Board;
 		 * times the steady state probability (the steady state chance of
 		 * starting a turn from that space)
 		 */
-		SimpleMatrix added = result.copy();
+		double[] added = result.clone();
 		for (int i = 0; i < board.size(); i++)
 			for (int j = 0; j < board.size(); j++)
-				added.set(j, 0, added.get(j, 0) + result.get(i, 0) * (stayInJail ? midMatrixJail[i][j] : midMatrix[i][j]));
+				added[j] += result[i] * (stayInJail ? midMatrixJail[i][j] : midMatrix[i][j]);
 
-		// copy the results back into an array for storage
-		double[] temp = new double[board.size()];
-		for (int i = 0; i < board.size(); i++)
-			temp[i] = added.get(i, 0);
-
-		if (stayInJail)
-			steadyStateJail = temp;
-		else
-			steadyState = temp;
+		if (stayInJail) {
+			steadyStateJail = added;
+			solutionJail = solution;
+		} else {
+			steadyState = added;
+			this.solution = solution;
+		}
 	}
 }
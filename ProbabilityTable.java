@@ -1,19 +1,61 @@
 package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+
+import org.ejml.simple.SimpleMatrix;
+
 import com.benpochily.monopoly.board.Board;
 
 /**
  * Stores an immutable table of cached probability information for a particular board
  * This is the main access point to all probability calculation.
+ * Tables are either built to a fixed depth up front (makeTable) or extended one turn
+ * at a time as deeper turns are requested (makeLazyTable). Tables for jail policies other than
+ * the two stays selected by stayInJail are built by JailPolicyTables.
  */
 public final class ProbabilityTable {	
-	/*three dimensional array which contains all stored probabilities
+	/**
+	 * The default tolerance below which a lazily built table is considered to have converged
+	 * @see makeLazyTable(Board, double)
+	 */
+	public static final double DEFAULT_TOLERANCE = 1e-10;
+	
+	/*flat storage which contains all stored probabilities
 	To reference the probability of ending on y in z turns, starting from x,
-	use probabilities[z][x][y].*/
-	private final double[][][] probabilities;
+	use probabilities.get(z, x, y).*/
+	private final TableStorage probabilities;
 	private final double[] steadyState;
-	private final double[][][] probabilitiesJail;
+	private final TableStorage probabilitiesJail;
 	private final double[] steadyStateJail;	
+	//one-turn matrices, kept so single rows can be streamed without a full table
+	private final SparseMatrix markovMatrix;
+	private final SparseMatrix oneTurnMatrix;
+	private final SparseMatrix markovMatrixJail;
+	private final SparseMatrix oneTurnMatrixJail;
+	//one-turn mid matrices, kept so withChange can copy unchanged rows exactly; null unless built by a ProbabilityCalculator
+	private final SparseMatrix midMatrix;
+	private final SparseMatrix midMatrixJail;
+	//the board whose forward distributions built this table, kept so withChange can reuse them; null unless built by a ProbabilityCalculator
+	private final ProbBoard board;
+	//how the states of the table divide between physical spaces and turns in jail; both 0 if unknown
+	private final int physicalSize;
+	private final int maxTurnsInJail;
+	private final TableModel model;
+	//the jail policies the table follows in place of the short and long jail stays
+	private final JailPolicy policy;
+	private final JailPolicy policyJail;
+	private final ProbabilityTableListener listener;
+	/*
+	 * Running totals of probabilities over turns, indexed as the storage: cumulative[index(t, a, b)]
+	 * is the sum of the probabilities of landing on b from a in turns 0 to t. Built the first 
+	 * time they're needed; if two threads race to build them, they build the same thing.
+	 */
+	private volatile double[] cumulative;
+	private volatile double[] cumulativeJail;
 	
 	/**
 	 * Constructs and returns a complete table of probabilities for the given board and depth.
@@ -22,16 +64,246 @@ public final class ProbabilityTable {
 	 * @return an immutable, thread-safe table of probabilities 
 	 */
 	public static final ProbabilityTable makeTable(Board board, int depth) {
-	    ProbabilityCalculator calc = new ProbabilityCalculator(board);
-		ProbabilityTable table = new ProbabilityTable(calc.getTable(depth, false), calc.getSteadyState(false), calc.getTable(depth, true), calc.getSteadyState(true));
+		return makeTable(board, depth, TablePrecision.DOUBLE);
+	}
+	
+	/**
+	 * Constructs and returns a complete table of probabilities for the given board and depth,
+	 * stored with the given precision.
+	 * @param board The board for which probabilities should be calculated
+	 * @param depth How many turns in the future exact data should be calculated for
+	 * @param precision The precision per-turn probabilities should be stored with. 
+	 * Steady state probabilities are always stored as doubles.
+	 * @return an immutable, thread-safe table of probabilities 
+	 */
+	public static final ProbabilityTable makeTable(Board board, int depth, TablePrecision precision) {
+		return makeTable(board, depth, precision, null);
+	}
+	
+	/**
+	 * Constructs and returns a complete table of probabilities for the given board and depth,
+	 * stored with the given precision. The transition tables and steady states are calculated
+	 * in parallel on the given pool, whose parallelism bounds the number of threads used.
+	 * @param board The board for which probabilities should be calculated
+	 * @param depth How many turns in the future exact data should be calculated for
+	 * @param precision The precision per-turn probabilities should be stored with. 
+	 * Steady state probabilities are always stored as doubles.
+	 * @param pool The pool to calculate on, or null to calculate on the calling thread
+	 * @return an immutable, thread-safe table of probabilities 
+	 */
+	public static final ProbabilityTable makeTable(Board board, int depth, TablePrecision precision, ForkJoinPool pool) {
+		return makeTable(board, depth, precision, pool, ProbabilityTableListener.NONE);
+	}
+	
+	/**
+	 * Constructs and returns a complete table of probabilities for the given board and depth,
+	 * as makeTable(Board, int, TablePrecision, ForkJoinPool), reporting how it is built and 
+	 * every lookup made on it to listener.
+	 * @param board The board for which probabilities should be calculated
+	 * @param depth How many turns in the future exact data should be calculated for
+	 * @param precision The precision per-turn probabilities should be stored with. 
+	 * Steady state probabilities are always stored as doubles.
+	 * @param pool The pool to calculate on, or null to calculate on the calling thread
+	 * @param listener The listener to report to
+	 * @return an immutable, thread-safe table of probabilities 
+	 */
+	public static final ProbabilityTable makeTable(Board board, int depth, TablePrecision precision, ForkJoinPool pool, 
+			ProbabilityTableListener listener) {
+		return makeTable(board, depth, precision, pool, listener, Summation.NAIVE);
+	}
+	
+	/**
+	 * Constructs and returns a complete table of probabilities for the given board and depth,
+	 * adding up probabilities as specified. Compensated summation keeps the rounding error of
+	 * deep tables down at some cost in speed; validate() measures it. Tables derived from this
+	 * one with withChange use naive summation.
+	 * @param board The board for which probabilities should be calculated
+	 * @param depth How many turns in the future exact data should be calculated for
+	 * @param precision The precision per-turn probabilities should be stored with
+	 * @param pool The pool to calculate on, or null to calculate on the calling thread
+	 * @param listener The listener to report measurements to
+	 * @param summation How probabilities should be added up
+	 * @return an immutable, thread-safe table of probabilities 
+	 */
+	public static final ProbabilityTable makeTable(Board board, int depth, TablePrecision precision, ForkJoinPool pool, 
+			ProbabilityTableListener listener, Summation summation) {
+		return makeTable(board, depth, precision, pool, listener, summation, new DenseSteadyStateSolver());
+	}
+	
+	/**
+	 * Constructs and returns a complete table of probabilities for the given board and depth,
+	 * as makeTable(Board, int, TablePrecision, ForkJoinPool, ProbabilityTableListener, Summation),
+	 * finding the steady state with solver. An IterativeSteadyStateSolver is much cheaper than
+	 * the default dense solve on large boards.
+	 * @param board The board for which probabilities should be calculated
+	 * @param depth How many turns in the future exact data should be calculated for
+	 * @param precision The precision per-turn probabilities should be stored with
+	 * @param pool The pool to calculate on, or null to calculate on the calling thread
+	 * @param listener The listener to report measurements to
+	 * @param summation How probabilities should be added up
+	 * @param solver The solver to find the steady state with
+	 * @return an immutable, thread-safe table of probabilities 
+	 */
+	public static final ProbabilityTable makeTable(Board board, int depth, TablePrecision precision, ForkJoinPool pool, 
+			ProbabilityTableListener listener, Summation summation, SteadyStateSolver solver) {
+		return makeTable(new ProbabilityCalculator(board, pool, listener, summation, solver), depth, precision);
+	}
+	
+	/**
+	 * Constructs and returns a complete table of the probabilities calculated by calc
+	 * @param calc the calculator
+	 * @param depth How many turns in the future exact data should be calculated for
+	 * @param precision The precision per-turn probabilities should be stored with
+	 * @return an immutable, thread-safe table of probabilities 
+	 */
+	/*package*/ static final ProbabilityTable makeTable(ProbabilityCalculator calc, int depth, TablePrecision precision) {
+		ProbabilityTable table = new ProbabilityTable(calc, storeTable(calc, depth, false, precision), storeTable(calc, depth, true, precision));
 		return table;
 	}
 	
-	private ProbabilityTable(double[][][] probabilities, double[] steadyState, double[][][] probabilitiesJail, double[] steadyStateJail) {
+	// calculates and stores a calculator's table for one jail strategy, reporting it to the calculator's listener
+	private static TableStorage storeTable(ProbabilityCalculator calc, int depth, boolean stayInJail, TablePrecision precision) {
+		long start = System.nanoTime();
+		TableStorage storage = TableStorage.create(calc.getTable(depth, stayInJail), depth, calc.size(), precision);
+		calc.listener().tableBuilt(stayInJail, depth, System.nanoTime() - start, storage.footprint());
+		return storage;
+	}
+	
+	/**
+	 * Constructs and returns a table of probabilities for the given board which computes
+	 * turns only when they are first requested, with the default tolerance.
+	 * @param board The board for which probabilities should be calculated
+	 * @return a thread-safe table of probabilities with no maximum depth
+	 * @see makeLazyTable(Board, double)
+	 */
+	public static final ProbabilityTable makeLazyTable(Board board) {
+		return makeLazyTable(board, DEFAULT_TOLERANCE);
+	}
+	
+	/**
+	 * Constructs and returns a table of probabilities for the given board which computes
+	 * turns only when they are first requested, and caches them. Once two successive turns 
+	 * differ by less than tolerance, later turns are answered from the steady state.
+	 * @param board The board for which probabilities should be calculated
+	 * @param tolerance the largest difference between any two probabilities in successive turns
+	 * for which the table is considered to have converged
+	 * @return a thread-safe table of probabilities with no maximum depth
+	 */
+	public static final ProbabilityTable makeLazyTable(Board board, double tolerance) {
+		return makeLazyTable(board, tolerance, ProbabilityTableListener.NONE);
+	}
+	
+	/**
+	 * Constructs and returns a table of probabilities for the given board which computes
+	 * turns only when they are first requested, as makeLazyTable(Board, double), reporting
+	 * how it is built, each time it computes more turns and every lookup made on it to listener.
+	 * @param board The board for which probabilities should be calculated
+	 * @param tolerance the largest difference between any two probabilities in successive turns
+	 * for which the table is considered to have converged
+	 * @param listener The listener to report to
+	 * @return a thread-safe table of probabilities with no maximum depth
+	 */
+	public static final ProbabilityTable makeLazyTable(Board board, double tolerance, ProbabilityTableListener listener) {
+		ProbabilityCalculator calc = new ProbabilityCalculator(board, null, listener);
+		ProbabilityTable table = new ProbabilityTable(calc,
+				new LazyTableStorage(calc.getSparseMarkovMatrix(false), calc.getSparseOneTurnMatrix(false), calc.getSteadyState(false), tolerance,
+						false, listener),
+				new LazyTableStorage(calc.getSparseMarkovMatrix(true), calc.getSparseOneTurnMatrix(true), calc.getSteadyState(true), tolerance,
+						true, listener));
+		return table;
+	}
+	
+	/**
+	 * Constructs and returns a complete table of probabilities for the given board and depth,
+	 * with the cards of each deck drawn in the order the deck holds them, without replacement,
+	 * rather than at random. Each turn starts with every card equally likely to be next. 
+	 * The position of each deck is tracked as part of the state, which multiplies the work
+	 * and memory by the product of the deck sizes, so this is only suited to boards with few, 
+	 * small decks, such as the standard board's two decks of 16 cards. The one-turn matrices
+	 * used by distributionsFrom average over the deck positions.
+	 * @param board The board for which probabilities should be calculated
+	 * @param depth How many turns in the future exact data should be calculated for
+	 * @param pool The pool to calculate on, or null to calculate on the calling thread
+	 * @return an immutable, thread-safe table of probabilities 
+	 * @throws IllegalArgumentException if the number of spaces times the product of the deck
+	 * sizes is more than 2^20
+	 */
+	public static final ProbabilityTable makeDeckStateTable(Board board, int depth, ForkJoinPool pool) {
+		DeckStateCalculator calc = new DeckStateCalculator(board, pool);
+		return new ProbabilityTable(
+				TableStorage.create(calc.getTable(depth, false), depth, calc.size(), TablePrecision.DOUBLE), calc.getSteadyState(false), 
+				calc.getLumpedMatrix(false, false), calc.getLumpedMatrix(true, false),
+				TableStorage.create(calc.getTable(depth, true), depth, calc.size(), TablePrecision.DOUBLE), calc.getSteadyState(true), 
+				calc.getLumpedMatrix(false, true), calc.getLumpedMatrix(true, true), 
+				board.physicalSize(), board.maxTurnsInJail(), TableModel.DECK_STATE, ProbabilityTableListener.NONE);
+	}
+	
+	private ProbabilityTable(ProbabilityCalculator calc, TableStorage probabilities, TableStorage probabilitiesJail) {
+		this(probabilities, calc.getSteadyState(false), calc.getSparseMarkovMatrix(false), calc.getSparseOneTurnMatrix(false),
+				probabilitiesJail, calc.getSteadyState(true), calc.getSparseMarkovMatrix(true), calc.getSparseOneTurnMatrix(true), 
+				calc.getSparseMidMatrix(false), calc.getSparseMidMatrix(true), calc.board(), calc.board().physicalSize(), calc.board().maxTurnsInJail(),
+				TableModel.EXACT, calc.policy(false), calc.policy(true), calc.listener());
+	}
+	
+	/**
+	 * Loads a table previously written with save(). The file is memory-mapped, and
+	 * per-turn probabilities are read directly from it rather than copied into memory.
+	 * @param path the snapshot file
+	 * @return an immutable, thread-safe table of probabilities
+	 * @throws IOException if the file can't be read, is corrupt or is from an unsupported version
+	 */
+	public static final ProbabilityTable load(Path path) throws IOException {
+		return load(path, ProbabilityTableListener.NONE);
+	}
+	
+	/**
+	 * Loads a table previously written with save(), as load(Path), reporting the loading
+	 * of each jail strategy's probabilities and every lookup made on it to listener.
+	 * @param path the snapshot file
+	 * @param listener The listener to report to
+	 * @return an immutable, thread-safe table of probabilities
+	 * @throws IOException if the file can't be read, is corrupt or is from an unsupported version
+	 */
+	public static final ProbabilityTable load(Path path, ProbabilityTableListener listener) throws IOException {
+		return TableSnapshot.load(path, listener);
+	}
+	
+	/*package*/ ProbabilityTable(TableStorage probabilities, double[] steadyState, SparseMatrix markovMatrix, SparseMatrix oneTurnMatrix, 
+			TableStorage probabilitiesJail, double[] steadyStateJail, SparseMatrix markovMatrixJail, SparseMatrix oneTurnMatrixJail,
+			int physicalSize, int maxTurnsInJail, TableModel model, ProbabilityTableListener listener) {
+		this(probabilities, steadyState, markovMatrix, oneTurnMatrix, probabilitiesJail, steadyStateJail, markovMatrixJail, oneTurnMatrixJail,
+				null, null, physicalSize, maxTurnsInJail, model, JailPolicy.of(false), JailPolicy.of(true), listener);
+	}
+	
+	/*package*/ ProbabilityTable(TableStorage probabilities, double[] steadyState, SparseMatrix markovMatrix, SparseMatrix oneTurnMatrix, 
+			TableStorage probabilitiesJail, double[] steadyStateJail, SparseMatrix markovMatrixJail, SparseMatrix oneTurnMatrixJail,
+			SparseMatrix midMatrix, SparseMatrix midMatrixJail, int physicalSize, int maxTurnsInJail, TableModel model, 
+			JailPolicy policy, JailPolicy policyJail, ProbabilityTableListener listener) {
+		this(probabilities, steadyState, markovMatrix, oneTurnMatrix, probabilitiesJail, steadyStateJail, markovMatrixJail, oneTurnMatrixJail,
+				midMatrix, midMatrixJail, null, physicalSize, maxTurnsInJail, model, policy, policyJail, listener);
+	}
+	
+	private ProbabilityTable(TableStorage probabilities, double[] steadyState, SparseMatrix markovMatrix, SparseMatrix oneTurnMatrix, 
+			TableStorage probabilitiesJail, double[] steadyStateJail, SparseMatrix markovMatrixJail, SparseMatrix oneTurnMatrixJail,
+			SparseMatrix midMatrix, SparseMatrix midMatrixJail, ProbBoard board, int physicalSize, int maxTurnsInJail, TableModel model,
+			JailPolicy policy, JailPolicy policyJail, ProbabilityTableListener listener) {
 		this.probabilities = probabilities;
 		this.steadyState = steadyState;
+		this.markovMatrix = markovMatrix;
+		this.oneTurnMatrix = oneTurnMatrix;
 		this.probabilitiesJail = probabilitiesJail;
 		this.steadyStateJail = steadyStateJail;
+		this.markovMatrixJail = markovMatrixJail;
+		this.oneTurnMatrixJail = oneTurnMatrixJail;
+		this.midMatrix = midMatrix;
+		this.midMatrixJail = midMatrixJail;
+		this.board = board;
+		this.physicalSize = physicalSize;
+		this.maxTurnsInJail = maxTurnsInJail;
+		this.model = model;
+		this.policy = policy;
+		this.policyJail = policyJail;
+		this.listener = listener;
 	}
 	
 	/**
@@ -45,7 +317,165 @@ public final class ProbabilityTable {
 	 * @return the probability
 	 */
 	public final double getProbability(int origin, int destination, int turn, boolean stayInJail) {
-		return stayInJail ? probabilitiesJail[turn][origin][destination] : probabilities[turn][origin][destination];
+		listener.lookup();
+		return stayInJail ? probabilitiesJail.get(turn, origin, destination) : probabilities.get(turn, origin, destination);
+	}
+	
+	/**
+	 * copies the probability of landing on every space from origin turn turns in the future
+	 * into result, given a jail strategy. Prefer this to calling getProbability for each space.
+	 * @param origin the id of the starting space
+	 * @param turn the particular turn to check
+	 * @param stayInJail true if the player will stay in jail for the full duration;
+	 * false if they will pay to leave at the first opportunity
+	 * @param result an array of at least size() elements, which is filled indexed by space id
+	 * @return result
+	 */
+	public final double[] getProbabilities(int origin, int turn, boolean stayInJail, double[] result) {
+		listener.lookup();
+		storage(stayInJail).copyRow(turn, origin, result, 0);
+		return result;
+	}
+	
+	/**
+	 * returns the sum, over every turn from firstTurn up to but not including lastTurn, of the
+	 * probability of landing on each space from origin multiplied by that space's weight. 
+	 * With the rent of each space as its weight, this is the expected rent paid over those turns.
+	 * @param origin the id of the starting space
+	 * @param weights a weight for each space, indexed by space id, of at least size() elements
+	 * @param firstTurn the first turn to include
+	 * @param lastTurn the turn after the last turn to include
+	 * @param stayInJail true if the player will stay in jail for the full duration;
+	 * false if they will pay to leave at the first opportunity
+	 * @return the weighted sum
+	 */
+	public final double getWeightedSum(int origin, double[] weights, int firstTurn, int lastTurn, boolean stayInJail) {
+		listener.lookup();
+		TableStorage storage = storage(stayInJail);
+		double sum = 0;
+		for (int turn = firstTurn; turn < lastTurn; turn++)
+			sum += storage.dot(turn, origin, weights);
+		return sum;
+	}
+	
+	/**
+	 * returns the expected number of times a player starting from origin will land on any of
+	 * a set of spaces turn turns in the future, given a jail strategy: the sum of the 
+	 * probabilities of landing on each of them. A turn that rolls doubles can land on more
+	 * than one space of the set, so this is not the probability of landing on the set, 
+	 * only an upper bound on it.
+	 * @param origin the id of the starting space
+	 * @param destinations the ids of the target spaces, such as a color group
+	 * @param turn the particular turn to check
+	 * @param stayInJail true if the player will stay in jail for the full duration;
+	 * false if they will pay to leave at the first opportunity
+	 * @return the expected number of landings on the set
+	 */
+	public final double getExpectedLandings(int origin, BitSet destinations, int turn, boolean stayInJail) {
+		listener.lookup();
+		return storage(stayInJail).sum(turn, origin, destinations);
+	}
+	
+	/**
+	 * returns the expected number of times a player starting from origin will land on destination
+	 * over every turn from firstTurn up to but not including lastTurn, given their jail strategy.
+	 * Answered in constant time from running totals over the turns, which are calculated (using
+	 * as much memory again as the table) on the first call for each jail strategy. Tables built 
+	 * by makeLazyTable have no fixed depth, and tables too large for the totals to fit in one 
+	 * array, sum the turns one at a time instead.
+	 * @param origin the id of the starting space
+	 * @param destination the id of the target space
+	 * @param firstTurn the first turn to include
+	 * @param lastTurn the turn after the last turn to include
+	 * @param stayInJail true if the player will stay in jail for the full duration;
+	 * false if they will pay to leave at the first opportunity
+	 * @return the expected number of landings
+	 */
+	public final double getExpectedVisits(int origin, int destination, int firstTurn, int lastTurn, boolean stayInJail) {
+		listener.lookup();
+		TableStorage storage = storage(stayInJail);
+		if (lastTurn <= firstTurn)
+			return 0.0;
+		if (firstTurn < 0 || lastTurn > storage.depth())
+			throw new IllegalArgumentException("turns " + firstTurn + " to " + lastTurn + " are outside the table's depth of " + storage.depth());
+		if (!hasCumulative(storage)) {
+			double sum = 0;
+			for (int turn = firstTurn; turn < lastTurn; turn++)
+				sum += storage.get(turn, origin, destination);
+			return sum;
+		}
+		double[] totals = cumulative(stayInJail);
+		int n = storage.size();
+		int offset = origin * n + destination;
+		double before = firstTurn == 0 ? 0.0 : totals[(firstTurn - 1) * n * n + offset];
+		return totals[(lastTurn - 1) * n * n + offset] - before;
+	}
+	
+	/**
+	 * returns the discounted expected number of landings on every space from every starting space
+	 * over all future turns, counting a landing x turns from now as discount^x, given a jail strategy.
+	 * This is found with a single linear solve of the one-turn matrices rather than by summing
+	 * turns, so it doesn't depend on the depth of the table.
+	 * @param discount the weight of a landing one turn later than another, at least 0 and less than 1
+	 * @param stayInJail true if the player will stay in jail for the full duration;
+	 * false if they will pay to leave at the first opportunity
+	 * @return the expected landings from each space to each space
+	 */
+	public final ExpectedVisits getDiscountedVisits(double discount, boolean stayInJail) {
+		if (!(discount >= 0.0 && discount < 1.0))
+			throw new IllegalArgumentException("discount must be at least 0 and less than 1: " + discount);
+		/*
+		 * The landings x turns from now are M^x * (M + mid), so the discounted total is 
+		 * (I + dM + d^2M^2 + ...)(M + mid) = (I - dM)^-1 (M + mid): solve (I - dM) V = M + mid.
+		 */
+		SparseMatrix markov = markovMatrix(stayInJail);
+		SparseMatrix oneTurn = oneTurnMatrix(stayInJail);
+		int n = markov.size();
+		SimpleMatrix system = new SimpleMatrix(n, n);
+		SimpleMatrix oneTurnDense = new SimpleMatrix(n, n);
+		double[] row = new double[n];
+		for (int i = 0; i < n; i++) {
+			markov.copyRow(i, row);
+			for (int j = 0; j < n; j++)
+				system.set(i, j, (i == j ? 1.0 : 0.0) - discount * row[j]);
+			oneTurn.copyRow(i, row);
+			for (int j = 0; j < n; j++)
+				oneTurnDense.set(i, j, row[j]);
+		}
+		SimpleMatrix solution = system.solve(oneTurnDense);
+		double[] visits = new double[n * n];
+		for (int i = 0; i < n; i++)
+			for (int j = 0; j < n; j++)
+				visits[i * n + j] = solution.get(i, j);
+		return new ExpectedVisits(discount, n, visits);
+	}
+	
+	/**
+	 * Checks every stored turn of this table for numerical drift.
+	 * @see TableValidation
+	 * @return the drift of each check, turn by turn
+	 */
+	public final TableValidation validate() {
+		return validate(Math.min(probabilities.storedDepth(), probabilitiesJail.storedDepth()));
+	}
+	
+	/**
+	 * Checks the first depth turns of this table for numerical drift. Tables built by 
+	 * makeLazyTable calculate any of those turns not yet calculated.
+	 * @see TableValidation
+	 * @param depth the number of turns to check
+	 * @return the drift of each check, turn by turn
+	 */
+	public final TableValidation validate(int depth) {
+		return new TableValidation(this, depth);
+	}
+	
+	/**
+	 * @return the number of spaces on the board plus the number of turns in jail, which
+	 * is one more than the largest space id
+	 */
+	public final int size() {
+		return probabilities.size();
 	}
 	
 	/**
@@ -57,6 +487,155 @@ public final class ProbabilityTable {
 	 * @return the probability
 	 */
 	public final double getSteadyState(int space, boolean stayInJail) {
+		listener.lookup();
 		return stayInJail ? steadyStateJail[space] : steadyState[space];
 	}
+	
+	/**
+	 * returns the probability of landing on each space from a single starting space,
+	 * one turn at a time, given a jail strategy. Turns are calculated as they are iterated, 
+	 * so this works to any depth and never builds a full table. Prefer getProbability for 
+	 * turns which this table already stores.
+	 * @param origin the id of the starting space
+	 * @param stayInJail true if the player will stay in jail for the full duration;
+	 * false if they will pay to leave at the first opportunity
+	 * @return an endless iterator whose nth element (counting from zero) holds the
+	 * probability of landing on each space n turns in the future, indexed by space id
+	 */
+	public final Iterator<double[]> distributionsFrom(int origin, boolean stayInJail) {
+		return stayInJail ? new DistributionIterator(markovMatrixJail, oneTurnMatrixJail, origin) : new DistributionIterator(markovMatrix, oneTurnMatrix, origin);
+	}
+	
+	/**
+	 * Constructs and returns a table of probabilities for a board which differs from this
+	 * table's board only as described by change. Rows of the transition tables which can't
+	 * be affected by the change are reused from this table, and the steady states are
+	 * found by iterating from this table's rather than by a fresh solve. The new table
+	 * is stored with the same precision as this one, follows the same jail policies (for a
+	 * table from JailPolicyTables), and reports to the same listener. A board with a different
+	 * number of spaces or turns in jail is built in full.
+	 * 
+	 * Only exact tables can be rebuilt: a table from makeDeckStateTable or MonteCarloResult.toTable
+	 * follows a different model, which this can't rebuild, so it throws instead.
+	 * @param board The changed board
+	 * @param change How the board has changed since this table was built
+	 * @param depth How many turns in the future exact data should be calculated for
+	 * @return an immutable, thread-safe table of probabilities
+	 * @throws IllegalStateException if this table isn't exact
+	 */
+	public final ProbabilityTable withChange(Board board, BoardChange change, int depth) {
+		return withChange(board, change, depth, new IterativeSteadyStateSolver());
+	}
+	
+	/**
+	 * Constructs and returns a table of probabilities for a board which differs from this
+	 * table's board only as described by change, as withChange(Board, BoardChange, int), 
+	 * finding the steady states with solver starting from this table's.
+	 * @param board The changed board
+	 * @param change How the board has changed since this table was built
+	 * @param depth How many turns in the future exact data should be calculated for
+	 * @param solver The solver to find the steady states with
+	 * @return an immutable, thread-safe table of probabilities
+	 * @throws IllegalStateException if this table isn't exact
+	 */
+	public final ProbabilityTable withChange(Board board, BoardChange change, int depth, SteadyStateSolver solver) {
+		if (model != TableModel.EXACT)
+			throw new IllegalStateException("withChange can only rebuild exact tables, not a table of model " + model);
+		TablePrecision precision = probabilities.precision();
+		//the split matters as well as the total: the jail rows of the two boards must line up
+		if (change.isEverything() || board.physicalSize() != physicalSize || board.maxTurnsInJail() != maxTurnsInJail) {
+			ProbabilityCalculator components = new ProbabilityCalculator(board, null, listener, Summation.NAIVE, solver);
+			if (policy.equals(JailPolicy.of(false)) && policyJail.equals(JailPolicy.of(true)))
+				return makeTable(components, depth, precision);
+			return makeTable(new ProbabilityCalculator(components, null, policy, policyJail), depth, precision);
+		}
+		return makeTable(new ProbabilityCalculator(board, null, this, change.spaces(), solver), depth, precision);
+	}
+	
+	/**
+	 * Writes this table to a versioned, checksummed binary file which can be loaded with load(),
+	 * replacing the file if it exists. A lazily built table is saved with the turns it has 
+	 * calculated so far, and loads as a table of that depth.
+	 * @param path the file to write
+	 * @throws IOException if the file can't be written
+	 */
+	public final void save(Path path) throws IOException {
+		TableSnapshot.save(this, path);
+	}
+	
+	// whether running totals can be built for a storage: it must have a fixed depth, and the totals must fit in one array
+	private static boolean hasCumulative(TableStorage storage) {
+		long n = storage.size();
+		return storage.depth() != Integer.MAX_VALUE && storage.depth() * n * n <= Integer.MAX_VALUE - 8;
+	}
+	
+	// returns the running totals for a jail strategy, building them if necessary; hasCumulative must hold
+	private double[] cumulative(boolean stayInJail) {
+		double[] totals = stayInJail ? cumulativeJail : cumulative;
+		if (totals != null)
+			return totals;
+		
+		TableStorage storage = storage(stayInJail);
+		int n = storage.size();
+		totals = new double[storage.depth() * n * n];
+		for (int turn = 0; turn < storage.depth(); turn++) {
+			for (int origin = 0; origin < n; origin++) {
+				//laid out as a flat table, but indexed here rather than through the storage, which needn't be flat
+				int start = (turn * n + origin) * n;
+				storage.copyRow(turn, origin, totals, start);
+				if (turn > 0)
+					for (int d = 0; d < n; d++)
+						totals[start + d] += totals[start - n * n + d];
+			}
+		}
+		if (stayInJail)
+			cumulativeJail = totals;
+		else
+			cumulative = totals;
+		return totals;
+	}
+	
+	/*package*/ final TableStorage storage(boolean stayInJail) {
+		return stayInJail ? probabilitiesJail : probabilities;
+	}
+	
+	/*package*/ final double[] steadyState(boolean stayInJail) {
+		return stayInJail ? steadyStateJail : steadyState;
+	}
+	
+	/*package*/ final SparseMatrix markovMatrix(boolean stayInJail) {
+		return stayInJail ? markovMatrixJail : markovMatrix;
+	}
+	
+	/*package*/ final SparseMatrix oneTurnMatrix(boolean stayInJail) {
+		return stayInJail ? oneTurnMatrixJail : oneTurnMatrix;
+	}
+	
+	/*package*/ final SparseMatrix midMatrix(boolean stayInJail) {
+		return stayInJail ? midMatrixJail : midMatrix;
+	}
+	
+	/*package*/ final JailPolicy policy(boolean stayInJail) {
+		return stayInJail ? policyJail : policy;
+	}
+	
+	/*package*/ final ProbBoard board() {
+		return board;
+	}
+	
+	/*package*/ final int physicalSize() {
+		return physicalSize;
+	}
+	
+	/*package*/ final int maxTurnsInJail() {
+		return maxTurnsInJail;
+	}
+	
+	/*package*/ final TableModel model() {
+		return model;
+	}
+	
+	/*package*/ final ProbabilityTableListener listener() {
+		return listener;
+	}
 }
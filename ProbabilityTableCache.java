@@ -0,0 +1,182 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.benpochily.monopoly.board.Board;
+
+/**
+ * A thread-safe, size-bounded cache of ProbabilityTables, keyed on the structure of the board
+ * (see BoardFingerprint) rather than on the Board object, so every game played on the same 
+ * configuration shares one table.
+ * 
+ * Loading is single-flight: if several threads ask for the same missing table at once, one 
+ * builds it and the others wait for the result. When the cache is full, the least recently 
+ * used table is evicted.
+ */
+public final class ProbabilityTableCache {
+	/**
+	 * The number of tables held by the shared cache
+	 */
+	public static final int DEFAULT_MAX_SIZE = 32;
+	
+	private static final ProbabilityTableCache shared = new ProbabilityTableCache(DEFAULT_MAX_SIZE);
+	
+	private final int maxSize;
+	//access-ordered, so iteration starts at the least recently used table. Guarded by itself.
+	private final Map<Key, CompletableFuture<ProbabilityTable>> tables;
+	
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder buildNanos = new LongAdder();
+	
+	/**
+	 * Returns the process-wide cache
+	 * @return the cache
+	 */
+	public static final ProbabilityTableCache shared() {
+		return shared;
+	}
+	
+	/**
+	 * Constructs a new, empty cache
+	 * @param maxSize the maximum number of tables to hold
+	 */
+	public ProbabilityTableCache(int maxSize) {
+		if (maxSize < 1)
+			throw new IllegalArgumentException("maxSize must be at least 1");
+		this.maxSize = maxSize;
+		tables = new LinkedHashMap<Key, CompletableFuture<ProbabilityTable>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, CompletableFuture<ProbabilityTable>> eldest) {
+				return size() > ProbabilityTableCache.this.maxSize;
+			}
+		};
+	}
+	
+	/**
+	 * Returns a table of probabilities for the given board and depth, building it only
+	 * if no table for an identical board configuration is cached.
+	 * @see ProbabilityTable#makeTable(Board, int)
+	 * @param board The board for which probabilities should be calculated
+	 * @param depth How many turns in the future exact data should be calculated for
+	 * @return an immutable, thread-safe table of probabilities 
+	 */
+	public final ProbabilityTable getTable(Board board, int depth) {
+		return getTable(board, depth, TablePrecision.DOUBLE);
+	}
+	
+	/**
+	 * Returns a table of probabilities for the given board and depth, stored with the given
+	 * precision, building it only if no matching table is cached.
+	 * @see ProbabilityTable#makeTable(Board, int, TablePrecision)
+	 * @param board The board for which probabilities should be calculated
+	 * @param depth How many turns in the future exact data should be calculated for
+	 * @param precision The precision per-turn probabilities should be stored with
+	 * @return an immutable, thread-safe table of probabilities 
+	 */
+	public final ProbabilityTable getTable(Board board, int depth, TablePrecision precision) {
+		Key key = new Key(BoardFingerprint.of(board), depth, precision);
+		CompletableFuture<ProbabilityTable> future;
+		boolean building = false;
+		synchronized (tables) {
+			future = tables.get(key);
+			if (future == null) {
+				future = new CompletableFuture<ProbabilityTable>();
+				tables.put(key, future);
+				building = true;
+			}
+		}
+		
+		if (!building) {
+			hits.increment();
+			return future.join();
+		}
+		
+		misses.increment();
+		long start = System.nanoTime();
+		try {
+			future.complete(ProbabilityTable.makeTable(board, depth, precision));
+		} catch (RuntimeException | Error e) {
+			//don't cache failures, let the next caller try again
+			synchronized (tables) {
+				tables.remove(key, future);
+			}
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			buildNanos.add(System.nanoTime() - start);
+		}
+		return future.join();
+	}
+	
+	/**
+	 * @return the number of tables currently cached, including any being built
+	 */
+	public final int size() {
+		synchronized (tables) {
+			return tables.size();
+		}
+	}
+	
+	/**
+	 * Removes every table from the cache. Statistics are not reset.
+	 */
+	public final void clear() {
+		synchronized (tables) {
+			tables.clear();
+		}
+	}
+	
+	/**
+	 * @return the number of requests answered by a cached (or already building) table
+	 */
+	public final long hits() {
+		return hits.sum();
+	}
+	
+	/**
+	 * @return the number of requests which had to build a table
+	 */
+	public final long misses() {
+		return misses.sum();
+	}
+	
+	/**
+	 * @return the total time spent building tables, in nanoseconds
+	 */
+	public final long buildTimeNanos() {
+		return buildNanos.sum();
+	}
+	
+	//what a cached table was built from
+	private static final class Key {
+		private final BoardFingerprint board;
+		private final int depth;
+		private final TablePrecision precision;
+		
+		Key(BoardFingerprint board, int depth, TablePrecision precision) {
+			this.board = board;
+			this.depth = depth;
+			this.precision = precision;
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key other = (Key) o;
+			return depth == other.depth && precision == other.precision && board.equals(other.board);
+		}
+		
+		@Override
+		public int hashCode() {
+			return Objects.hash(board, depth, precision);
+		}
+	}
+}
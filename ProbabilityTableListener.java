@@ -0,0 +1,63 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+/**
+ * Receives measurements of how ProbabilityTables are built and used, for metrics.
+ * Every method does nothing by default, so implementations only need to override
+ * what they want to record. Tables built without a listener use NONE, which the
+ * JIT reduces to nothing.
+ * 
+ * Methods may be called from several threads at once, including pool threads 
+ * when a table is built in parallel.
+ */
+public interface ProbabilityTableListener {
+	/**
+	 * A listener which ignores everything
+	 */
+	ProbabilityTableListener NONE = new ProbabilityTableListener() {};
+	
+	/**
+	 * Called when a phase of building a table completes
+	 * @param phase the phase
+	 * @param nanos how long the phase took, in nanoseconds
+	 */
+	default void phaseCompleted(BuildPhase phase, long nanos) {
+	}
+	
+	/**
+	 * Called once the move tree has been walked from every space
+	 * @param nodes the number of branches visited, including those visited while 
+	 * memoizing forward distributions
+	 */
+	default void moveTreeWalked(long nodes) {
+	}
+	
+	/**
+	 * Called when a transition table has been built
+	 * @param stayInJail the jail strategy of the table
+	 * @param size the number of rows (and columns) in the table
+	 * @param nonZeros the number of nonzero entries in the Markov matrix
+	 */
+	default void transitionTableBuilt(boolean stayInJail, int size, int nonZeros) {
+	}
+	
+	/**
+	 * Called when the per-turn probabilities for a jail strategy have been calculated and stored.
+	 * A lazily built table calls this each time it calculates more turns, and a loaded table
+	 * calls it once the file has been read and checked.
+	 * @param stayInJail the jail strategy
+	 * @param depth the number of turns stored
+	 * @param nanos how long the calculation (or loading) took, in nanoseconds
+	 * @param footprint the approximate number of bytes used to store the turns
+	 */
+	default void tableBuilt(boolean stayInJail, int depth, long nanos, long footprint) {
+	}
+	
+	/**
+	 * Called once for every query made on a table: each call to getProbability or getSteadyState,
+	 * and each call to a bulk method such as getProbabilities, getWeightedSum, getExpectedLandings
+	 * or getExpectedVisits, however many probabilities it reads. This counts queries, not the 
+	 * probabilities behind them.
+	 */
+	default void lookup() {
+	}
+}
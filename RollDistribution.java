@@ -0,0 +1,95 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import com.benpochily.monopoly.game.Dice;
+
+/**
+ * The distinct outcomes of a single roll of the dice, as far as movement is concerned.
+ * Many ordered rolls share the same total and doubles flag (with two six-sided dice,
+ * 36 rolls collapse into 15 outcomes), so they are merged once here and weighted by
+ * their combined probability. Because it is built from Dice.forEachPossibleRoll,
+ * nonstandard dice are handled the same way.
+ * Used as a component of a ProbBoard
+ * @see ProbBoard
+ */
+/*package*/ final class RollDistribution {
+	private final int[] totals;
+	private final boolean[] doubles;
+	private final double[] probabilities;
+	private final double[] cumulative; //cumulative[i] is the probability of rolling outcome i or an earlier one
+	
+	/**
+	 * Constructs a new RollDistribution by enumerating every possible roll of the dice
+	 * @param dice the dice to be rolled
+	 */
+	public RollDistribution(Dice dice) {
+		//keyed on total * 2 + (doubles ? 1 : 0), kept in the order the dice enumerate them
+		Map<Integer, Double> outcomes = new LinkedHashMap<Integer, Double>();
+		dice.forEachPossibleRoll((roll, size) -> {
+			outcomes.merge(roll.getTotal() * 2 + (roll.isDoubles() ? 1 : 0), (double) 1 / size, Double::sum);
+		});
+		
+		totals = new int[outcomes.size()];
+		doubles = new boolean[outcomes.size()];
+		probabilities = new double[outcomes.size()];
+		int i = 0;
+		for (Map.Entry<Integer, Double> e : outcomes.entrySet()) {
+			totals[i] = e.getKey() / 2;
+			doubles[i] = e.getKey() % 2 == 1;
+			probabilities[i] = e.getValue();
+			i++;
+		}
+		
+		cumulative = new double[probabilities.length];
+		double sum = 0;
+		for (i = 0; i < probabilities.length; i++)
+			cumulative[i] = sum += probabilities[i];
+	}
+	
+	/**
+	 * @return the number of distinct outcomes
+	 */
+	public final int size() {
+		return totals.length;
+	}
+	
+	/**
+	 * @param outcome the index of the outcome, from 0 to size() - 1
+	 * @return the number of spaces moved
+	 */
+	public final int total(int outcome) {
+		return totals[outcome];
+	}
+	
+	/**
+	 * @param outcome the index of the outcome, from 0 to size() - 1
+	 * @return whether the outcome is a roll of doubles
+	 */
+	public final boolean isDoubles(int outcome) {
+		return doubles[outcome];
+	}
+	
+	/**
+	 * @param outcome the index of the outcome, from 0 to size() - 1
+	 * @return the probability of rolling this outcome
+	 */
+	public final double probability(int outcome) {
+		return probabilities[outcome];
+	}
+	
+	/**
+	 * Rolls the dice
+	 * @param random the source of randomness
+	 * @return the index of the outcome rolled, each with its probability
+	 */
+	public final int sample(SplittableRandom random) {
+		double u = random.nextDouble() * cumulative[cumulative.length - 1];
+		for (int i = 0; i < cumulative.length - 1; i++)
+			if (u < cumulative[i])
+				return i;
+		return cumulative.length - 1;
+	}
+}
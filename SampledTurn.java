@@ -0,0 +1,80 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * The record of a single randomly played turn: every space landed on, in order, and
+ * the space the turn ended on. ProbSpaces fill it in as they play out the turn, the way
+ * they fill a ProbAccumulator as they walk every outcome. Not thread-safe; each thread
+ * playing turns should have its own.
+ * @see MonteCarloSimulator
+ */
+/*package*/ final class SampledTurn {
+	private final SplittableRandom random;
+	private int[] landings = new int[8];
+	private int count;
+	private int end;
+	
+	/**
+	 * Constructs a new SampledTurn
+	 * @param random the source of randomness for the turns played
+	 */
+	public SampledTurn(SplittableRandom random) {
+		this.random = random;
+		reset();
+	}
+	
+	/**
+	 * Clears the record for a new turn
+	 */
+	public final void reset() {
+		count = 0;
+		end = -1;
+	}
+	
+	public final SplittableRandom random() {
+		return random;
+	}
+	
+	/**
+	 * Records landing on a space without ending the turn there
+	 * @param id the ID of the space
+	 */
+	public final void addMid(int id) {
+		if (count == landings.length)
+			landings = Arrays.copyOf(landings, count * 2);
+		landings[count++] = id;
+	}
+	
+	/**
+	 * Records ending the turn on a space
+	 * @param id the ID of the space
+	 */
+	public final void addEnd(int id) {
+		addMid(id);
+		end = id;
+	}
+	
+	/**
+	 * @return the number of spaces landed on, counting a space once per landing
+	 */
+	public final int landings() {
+		return count;
+	}
+	
+	/**
+	 * @param i the index of the landing, from 0 to landings() - 1
+	 * @return the ID of the space landed on
+	 */
+	public final int landing(int i) {
+		return landings[i];
+	}
+	
+	/**
+	 * @return the ID of the space the turn ended on, or -1 if the turn could not be played
+	 */
+	public final int end() {
+		return end;
+	}
+}
@@ -0,0 +1,326 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * An immutable square matrix stored in compressed sparse row (CSR) form.
+ * From any space a turn can only end a few dozen spaces ahead, on a card target
+ * or in jail, so the transition matrices are mostly zeros. Multiplying by a
+ * SparseMatrix only touches the nonzero entries, which makes propagating
+ * probabilities O(nonzeros) per row instead of O(size).
+ */
+public final class SparseMatrix {
+	private final int size;
+	/*
+	 * The nonzero entries of row i are columns[rowStart[i]] to columns[rowStart[i + 1] - 1],
+	 * with the matching values in values.
+	 */
+	private final int[] rowStart;
+	private final int[] columns;
+	private final double[] values;
+	
+	/**
+	 * Constructs a SparseMatrix containing the nonzero entries of a dense square matrix
+	 * @param matrix the matrix, indexed [row][column]
+	 * @return the sparse matrix
+	 */
+	public static final SparseMatrix fromDense(double[][] matrix) {
+		int nonZeros = 0;
+		for (double[] row : matrix)
+			for (double value : row)
+				if (value != 0.0)
+					nonZeros++;
+		
+		int[] rowStart = new int[matrix.length + 1];
+		int[] columns = new int[nonZeros];
+		double[] values = new double[nonZeros];
+		int k = 0;
+		for (int i = 0; i < matrix.length; i++) {
+			rowStart[i] = k;
+			for (int j = 0; j < matrix.length; j++) {
+				if (matrix[i][j] != 0.0) {
+					columns[k] = j;
+					values[k] = matrix[i][j];
+					k++;
+				}
+			}
+		}
+		rowStart[matrix.length] = k;
+		return new SparseMatrix(matrix.length, rowStart, columns, values);
+	}
+	
+	/**
+	 * Constructs a SparseMatrix containing the sum of two dense square matrices
+	 * @param a the first matrix
+	 * @param b the second matrix
+	 * @return the sparse matrix a + b
+	 */
+	/*package*/ static final SparseMatrix sum(double[][] a, double[][] b) {
+		//summed in place of a dense copy, so the only allocations are the sparse arrays
+		int nonZeros = 0;
+		for (int i = 0; i < a.length; i++)
+			for (int j = 0; j < a.length; j++)
+				if (a[i][j] + b[i][j] != 0.0)
+					nonZeros++;
+		
+		int[] rowStart = new int[a.length + 1];
+		int[] columns = new int[nonZeros];
+		double[] values = new double[nonZeros];
+		int k = 0;
+		for (int i = 0; i < a.length; i++) {
+			rowStart[i] = k;
+			for (int j = 0; j < a.length; j++) {
+				double value = a[i][j] + b[i][j];
+				if (value != 0.0) {
+					columns[k] = j;
+					values[k] = value;
+					k++;
+				}
+			}
+		}
+		rowStart[a.length] = k;
+		return new SparseMatrix(a.length, rowStart, columns, values);
+	}
+	
+	/**
+	 * Constructs a SparseMatrix from rows which are already sparse, for matrices too
+	 * large to build densely
+	 * @param rowColumns the columns of the nonzero entries of each row, in any order
+	 * @param rowValues the values of the nonzero entries of each row, matching rowColumns
+	 * @return the sparse matrix, with one row and column for each element of rowColumns
+	 */
+	/*package*/ static final SparseMatrix fromRows(int[][] rowColumns, double[][] rowValues) {
+		int[] rowStart = new int[rowColumns.length + 1];
+		for (int i = 0; i < rowColumns.length; i++)
+			rowStart[i + 1] = rowStart[i] + rowColumns[i].length;
+		
+		int[] columns = new int[rowStart[rowColumns.length]];
+		double[] values = new double[columns.length];
+		for (int i = 0; i < rowColumns.length; i++) {
+			System.arraycopy(rowColumns[i], 0, columns, rowStart[i], rowColumns[i].length);
+			System.arraycopy(rowValues[i], 0, values, rowStart[i], rowValues[i].length);
+		}
+		return new SparseMatrix(rowColumns.length, rowStart, columns, values);
+	}
+	
+	private SparseMatrix(int size, int[] rowStart, int[] columns, double[] values) {
+		this.size = size;
+		this.rowStart = rowStart;
+		this.columns = columns;
+		this.values = values;
+	}
+	
+	/**
+	 * @return the number of rows (and columns) in the matrix
+	 */
+	public final int size() {
+		return size;
+	}
+	
+	/**
+	 * @return the number of nonzero entries stored
+	 */
+	public final int nonZeros() {
+		return values.length;
+	}
+	
+	/**
+	 * Returns where a row's nonzero entries start: they are entries rowStart(row) to
+	 * rowStart(row + 1) - 1, in no particular order of column
+	 * @param row the row, from 0 to size(); rowStart(size()) is nonZeros()
+	 * @return the index of the row's first entry
+	 */
+	public final int rowStart(int row) {
+		return rowStart[row];
+	}
+	
+	/**
+	 * @param entry the index of a nonzero entry, from 0 to nonZeros() - 1
+	 * @return the column of the entry
+	 */
+	public final int column(int entry) {
+		return columns[entry];
+	}
+	
+	/**
+	 * @param entry the index of a nonzero entry, from 0 to nonZeros() - 1
+	 * @return the value of the entry
+	 */
+	public final double value(int entry) {
+		return values[entry];
+	}
+	
+	/**
+	 * Copies a row of this matrix into a dense array, overwriting its contents
+	 * @param row the row to copy
+	 * @param result the array to hold the row, of length at least size()
+	 */
+	public final void copyRow(int row, double[] result) {
+		Arrays.fill(result, 0, size, 0.0);
+		for (int k = rowStart[row]; k < rowStart[row + 1]; k++)
+			result[columns[k]] = values[k];
+	}
+	
+	/**
+	 * Returns whether a row has a nonzero entry in any of the given columns
+	 * @param row the row to check
+	 * @param columnSet the columns to look for
+	 * @return true if any of the columns is nonzero in the row
+	 */
+	/*package*/ final boolean rowIntersects(int row, BitSet columnSet) {
+		for (int k = rowStart[row]; k < rowStart[row + 1]; k++)
+			if (columnSet.get(columns[k]))
+				return true;
+		return false;
+	}
+	
+	/**
+	 * Multiplies a row vector by this matrix, overwriting result with vector x this.
+	 * @param vector the array holding the row vector
+	 * @param vectorOffset the position of the vector's first element
+	 * @param result the array to hold the result, which must not overlap the vector
+	 * @param resultOffset the position of the result's first element
+	 */
+	public final void multiply(double[] vector, int vectorOffset, double[] result, int resultOffset) {
+		Arrays.fill(result, resultOffset, resultOffset + size, 0.0);
+		for (int i = 0; i < size; i++) {
+			double v = vector[vectorOffset + i];
+			if (v == 0.0)
+				continue;
+			for (int k = rowStart[i]; k < rowStart[i + 1]; k++)
+				result[resultOffset + columns[k]] += v * values[k];
+		}
+	}
+	
+	/**
+	 * Multiplies a row vector by this matrix as multiply does, but with compensated summation.
+	 * @param vector the array holding the row vector
+	 * @param vectorOffset the position of the vector's first element
+	 * @param result the array to hold the result, which must not overlap the vector
+	 * @param resultOffset the position of the result's first element
+	 * @param compensation working space of at least size() elements
+	 */
+	/*package*/ final void multiplyCompensated(double[] vector, int vectorOffset, double[] result, int resultOffset, double[] compensation) {
+		Arrays.fill(result, resultOffset, resultOffset + size, 0.0);
+		Arrays.fill(compensation, 0, size, 0.0);
+		for (int i = 0; i < size; i++) {
+			double v = vector[vectorOffset + i];
+			if (v == 0.0)
+				continue;
+			for (int k = rowStart[i]; k < rowStart[i + 1]; k++) {
+				int j = columns[k];
+				double term = v * values[k];
+				double sum = result[resultOffset + j];
+				double t = sum + term;
+				if (Math.abs(sum) >= Math.abs(term))
+					compensation[j] += (sum - t) + term;
+				else
+					compensation[j] += (term - t) + sum;
+				result[resultOffset + j] = t;
+			}
+		}
+		for (int j = 0; j < size; j++)
+			result[resultOffset + j] += compensation[j];
+	}
+	
+	/**
+	 * Lumps this matrix into a smaller one by grouping rows and columns into blocks: entry
+	 * [a][b] of the result is the sum of every entry from a row in block a to a column in 
+	 * block b, with each row weighted.
+	 * @param weights the weight of each row
+	 * @param blocks the block of each row and column, from 0 to blockCount - 1
+	 * @param blockCount the number of blocks
+	 * @return the lumped matrix, indexed [row block][column block]
+	 */
+	public final double[][] lump(double[] weights, int[] blocks, int blockCount) {
+		double[][] result = new double[blockCount][blockCount];
+		for (int i = 0; i < size; i++) {
+			double[] resultRow = result[blocks[i]];
+			for (int k = rowStart[i]; k < rowStart[i + 1]; k++)
+				resultRow[blocks[columns[k]]] += weights[i] * values[k];
+		}
+		return result;
+	}
+	
+	/**
+	 * Multiplies a dense square matrix by this matrix, one row at a time,
+	 * overwriting result with dense x this.
+	 * @param dense the dense matrix, flat and row-major
+	 * @param result the array to hold the result, flat and row-major, which must not overlap dense
+	 * @param resultOffset the position of the result's first element
+	 */
+	/*package*/ final void multiplyRows(double[] dense, double[] result, int resultOffset) {
+		for (int row = 0; row < size; row++)
+			multiply(dense, row * size, result, resultOffset + row * size);
+	}
+	
+	/**
+	 * Multiplies a dense square matrix by this matrix as multiplyRows does, but with compensated summation.
+	 * @param dense the dense matrix, flat and row-major
+	 * @param result the array to hold the result, flat and row-major, which must not overlap dense
+	 * @param resultOffset the position of the result's first element
+	 * @param compensation working space of at least size() elements
+	 */
+	/*package*/ final void multiplyRowsCompensated(double[] dense, double[] result, int resultOffset, double[] compensation) {
+		for (int row = 0; row < size; row++)
+			multiplyCompensated(dense, row * size, result, resultOffset + row * size, compensation);
+	}
+	
+	/**
+	 * @return the number of bytes writeTo will write
+	 */
+	/*package*/ final int serializedSize() {
+		return Integer.BYTES * (2 + rowStart.length + columns.length) + Double.BYTES * values.length;
+	}
+	
+	/**
+	 * Writes this matrix to a buffer, in a form which can be read back by readFrom
+	 * @param buffer the buffer, which must have at least serializedSize() bytes remaining
+	 */
+	/*package*/ final void writeTo(ByteBuffer buffer) {
+		buffer.putInt(size);
+		buffer.putInt(values.length);
+		for (int start : rowStart)
+			buffer.putInt(start);
+		for (int column : columns)
+			buffer.putInt(column);
+		for (double value : values)
+			buffer.putDouble(value);
+	}
+	
+	/**
+	 * Reads a matrix written by writeTo from a buffer, checking that it is well formed
+	 * @param buffer the buffer, positioned at the start of the matrix
+	 * @return the matrix
+	 * @throws IOException if the buffer doesn't hold a well formed matrix
+	 */
+	/*package*/ static final SparseMatrix readFrom(ByteBuffer buffer) throws IOException {
+		if (buffer.remaining() < 2 * Integer.BYTES)
+			throw new IOException("sparse matrix header runs past the end of the buffer");
+		int size = buffer.getInt();
+		int nonZeros = buffer.getInt();
+		if (size < 0 || nonZeros < 0 || (long) Integer.BYTES * (size + 1L + nonZeros) + (long) Double.BYTES * nonZeros > buffer.remaining())
+			throw new IOException("sparse matrix of size " + size + " with " + nonZeros + " nonzeros doesn't fit in the buffer");
+		int[] rowStart = new int[size + 1];
+		int[] columns = new int[nonZeros];
+		double[] values = new double[nonZeros];
+		for (int i = 0; i < rowStart.length; i++) {
+			rowStart[i] = buffer.getInt();
+			if (i == 0 ? rowStart[i] != 0 : rowStart[i] < rowStart[i - 1] || rowStart[i] > nonZeros)
+				throw new IOException("sparse matrix has an invalid start for row " + i + ": " + rowStart[i]);
+		}
+		if (rowStart[size] != nonZeros)
+			throw new IOException("sparse matrix rows hold " + rowStart[size] + " entries, not " + nonZeros);
+		for (int i = 0; i < nonZeros; i++) {
+			columns[i] = buffer.getInt();
+			if (columns[i] < 0 || columns[i] >= size)
+				throw new IOException("sparse matrix has an entry in column " + columns[i] + ", outside its size " + size);
+		}
+		for (int i = 0; i < nonZeros; i++)
+			values[i] = buffer.getDouble();
+		return new SparseMatrix(size, rowStart, columns, values);
+	}
+}
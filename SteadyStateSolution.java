@@ -0,0 +1,49 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+/**
+ * The result of a SteadyStateSolver: the steady state distribution of turn-ending spaces
+ * (without mid probabilities), along with how it was reached
+ */
+public final class SteadyStateSolution {
+	private final double[] distribution;
+	private final int iterations;
+	private final double residual;
+	
+	/**
+	 * Constructs a new SteadyStateSolution, measuring its residual against the Markov matrix
+	 * @param distribution the steady state, indexed by space ID
+	 * @param iterations the number of iterations taken to find it, or 0 for a direct solve
+	 * @param sparseMarkov the Markov matrix which was solved
+	 */
+	public SteadyStateSolution(double[] distribution, int iterations, SparseMatrix sparseMarkov) {
+		this.distribution = distribution;
+		this.iterations = iterations;
+		double[] next = new double[distribution.length];
+		sparseMarkov.multiply(distribution, 0, next, 0);
+		double max = 0;
+		for (int i = 0; i < next.length; i++)
+			max = Math.max(max, Math.abs(next[i] - distribution[i]));
+		residual = max;
+	}
+	
+	/**
+	 * @return the steady state distribution, which must not be modified
+	 */
+	public final double[] distribution() {
+		return distribution;
+	}
+	
+	/**
+	 * @return the number of iterations the solver took, or 0 for a direct solve
+	 */
+	public final int iterations() {
+		return iterations;
+	}
+	
+	/**
+	 * @return the largest change to any probability after one more turn from the steady state
+	 */
+	public final double residual() {
+		return residual;
+	}
+}
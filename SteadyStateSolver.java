@@ -0,0 +1,24 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+/**
+ * A strategy for finding the steady state of a Markov matrix: the distribution of 
+ * turn-ending spaces which one more turn leaves unchanged. Pass one to 
+ * ProbabilityTable.makeTable to choose how a table's steady state is found. This package
+ * has dense, iterative and aggregation solvers; others can be written against the public
+ * view of SparseMatrix and returned as a SteadyStateSolution.
+ * @see DenseSteadyStateSolver
+ * @see IterativeSteadyStateSolver
+ * @see AggregationSteadyStateSolver
+ */
+public interface SteadyStateSolver {
+	
+	/**
+	 * Solves for the steady state of a Markov matrix
+	 * @param markovMatrix the Markov matrix, indexed [start][end]
+	 * @param sparseMarkov the same matrix in sparse form
+	 * @param initialGuess an estimate of the steady state to start from, such as the steady 
+	 * state of a similar board, or null if there is none. Solvers may ignore it.
+	 * @return the solution
+	 */
+	SteadyStateSolution solve(double[][] markovMatrix, SparseMatrix sparseMarkov, double[] initialGuess);
+}
@@ -0,0 +1,17 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+/**
+ * How probabilities are added up while building a table. A build sums a very large number of 
+ * small terms, both while walking the move tree and while raising the Markov matrix to each 
+ * turn's power, so the rounding error of plain addition grows with the board and the depth.
+ * @see ProbabilityTable#validate()
+ */
+public enum Summation {
+	/** Plain addition, the fastest */
+	NAIVE,
+	/** 
+	 * Neumaier's variant of Kahan summation, which carries the rounding error of each sum 
+	 * separately and adds it back at the end. About four times the arithmetic of NAIVE. 
+	 */
+	COMPENSATED
+}
@@ -0,0 +1,260 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import com.benpochily.monopoly.board.Board;
+
+/**
+ * Builds ProbabilityTables for a large batch of board variants, such as a sweep over house
+ * rules, in a fixed amount of memory. Boards are taken from the batch only as fast as tables
+ * are finished, at most maxInFlight at a time, and each table is handed to a TableSink as soon
+ * as it is built rather than collected.
+ * 
+ * Work is shared between variants only through whole tables. A variant with the same structure
+ * (see BoardFingerprint) as a recently built table, or as one still being built, reuses that 
+ * table outright; identical variants in flight at once are built only once. A variant which 
+ * differs from a recently built table at only a few spaces is built from it by 
+ * ProbabilityTable.withChange, which reuses the base table's move tree walks from spaces that
+ * can't reach a changed space. Anything else, including a change to the dice or the jail rules,
+ * is built in full. Nothing finer is shared between variants: roll subtrees are memoized within
+ * each variant's own ProbBoard, and dice distributions are enumerated afresh for each variant.
+ * A sweep is therefore cheapest when similar variants are given close together.
+ * Incrementally built tables find their steady states by iteration, so they agree with a full
+ * build to within IterativeSteadyStateSolver.DEFAULT_TOLERANCE.
+ */
+public final class TableBatchBuilder {
+	private final int depth;
+	private final TablePrecision precision;
+	private final int threads;
+	private final int maxInFlight;
+	
+	//access-ordered and bounded by maxInFlight, so the least recently used table is dropped. Guarded by itself.
+	private final Map<BoardFingerprint, ProbabilityTable> recent;
+	//the tables being built, so an identical variant waits for one rather than building its own. Guarded by recent.
+	private final Map<BoardFingerprint, CompletableFuture<ProbabilityTable>> building = new HashMap<BoardFingerprint, CompletableFuture<ProbabilityTable>>();
+	
+	private final LongAdder reused = new LongAdder();
+	private final LongAdder incremental = new LongAdder();
+	private final LongAdder full = new LongAdder();
+	
+	/**
+	 * Constructs a new TableBatchBuilder which builds on every available processor
+	 * @param depth How many turns in the future exact data should be calculated for
+	 */
+	public TableBatchBuilder(int depth) {
+		this(depth, TablePrecision.DOUBLE, Runtime.getRuntime().availableProcessors(), 2 * Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Constructs a new TableBatchBuilder
+	 * @param depth How many turns in the future exact data should be calculated for
+	 * @param precision The precision per-turn probabilities should be stored with
+	 * @param threads The number of tables to build at once
+	 * @param maxInFlight The most boards to hold at once, whether waiting, being built or waiting
+	 * for the sink. This also bounds the number of recently built tables kept to share work with.
+	 */
+	public TableBatchBuilder(int depth, TablePrecision precision, int threads, int maxInFlight) {
+		if (threads < 1)
+			throw new IllegalArgumentException("threads must be at least 1");
+		if (maxInFlight < threads)
+			throw new IllegalArgumentException("maxInFlight must be at least threads");
+		this.depth = depth;
+		this.precision = precision;
+		this.threads = threads;
+		this.maxInFlight = maxInFlight;
+		recent = new LinkedHashMap<BoardFingerprint, ProbabilityTable>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<BoardFingerprint, ProbabilityTable> eldest) {
+				return size() > TableBatchBuilder.this.maxInFlight;
+			}
+		};
+	}
+	
+	/**
+	 * Builds a table for every board in a stream, handing each to the sink as it finishes,
+	 * and returns once every table has been handed over.
+	 * @see #build(Iterator, TableSink)
+	 * @param boards the boards to build tables for
+	 * @param sink the sink to hand each table to
+	 * @return the number of tables built
+	 * @throws IOException if the sink fails to store a table
+	 */
+	public final long build(Stream<? extends Board> boards, TableSink sink) throws IOException {
+		return build(boards.iterator(), sink);
+	}
+	
+	/**
+	 * Builds a table for every board, handing each to the sink as it finishes, and returns 
+	 * once every table has been handed over. If a table can't be built or the sink fails, no
+	 * more boards are taken, the tables already being built are discarded and the first
+	 * failure is rethrown.
+	 * @param boards the boards to build tables for, which are taken only as needed
+	 * @param sink the sink to hand each table to
+	 * @return the number of tables built
+	 * @throws IOException if the sink fails to store a table
+	 */
+	public final long build(Iterator<? extends Board> boards, TableSink sink) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		Semaphore permits = new Semaphore(maxInFlight);
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Object sinkLock = new Object();
+		long count = 0;
+		try {
+			while (true) {
+				//wait for a finished table to make room before taking a board, so the batch is never held in memory
+				permits.acquireUninterruptibly();
+				if (failure.get() != null || !boards.hasNext()) {
+					permits.release();
+					break;
+				}
+				Board board = boards.next();
+				long index = count++;
+				executor.execute(() -> {
+					try {
+						if (failure.get() != null)
+							return;
+						ProbabilityTable table = buildTable(board);
+						synchronized (sinkLock) {
+							if (failure.get() == null)
+								sink.accept(index, board, table);
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					} finally {
+						permits.release();
+					}
+				});
+			}
+			permits.acquireUninterruptibly(maxInFlight);
+		} finally {
+			executor.shutdown();
+		}
+		
+		Throwable e = failure.get();
+		if (e instanceof IOException)
+			throw (IOException) e;
+		if (e instanceof RuntimeException)
+			throw (RuntimeException) e;
+		if (e instanceof Error)
+			throw (Error) e;
+		return count;
+	}
+	
+	/**
+	 * Removes every recently built table, so the next batch shares no work with the last.
+	 * Statistics are not reset.
+	 */
+	public final void clear() {
+		synchronized (recent) {
+			recent.clear();
+		}
+	}
+	
+	/**
+	 * @return the number of tables reused from a variant with the same structure, whether
+	 * already built or being built at the same time
+	 */
+	public final long reused() {
+		return reused.sum();
+	}
+	
+	/**
+	 * @return the number of tables built incrementally from a similar variant
+	 */
+	public final long incremental() {
+		return incremental.sum();
+	}
+	
+	/**
+	 * @return the number of tables built in full
+	 */
+	public final long full() {
+		return full.sum();
+	}
+	
+	//builds the table for one board, sharing as much as possible with recently built tables
+	private ProbabilityTable buildTable(Board board) {
+		BoardFingerprint fingerprint = BoardFingerprint.of(board);
+		List<Map.Entry<BoardFingerprint, ProbabilityTable>> candidates;
+		CompletableFuture<ProbabilityTable> pending;
+		CompletableFuture<ProbabilityTable> ours = new CompletableFuture<ProbabilityTable>();
+		synchronized (recent) {
+			ProbabilityTable same = recent.get(fingerprint);
+			if (same != null) {
+				reused.increment();
+				return same;
+			}
+			pending = building.putIfAbsent(fingerprint, ours);
+			candidates = pending == null ? new ArrayList<Map.Entry<BoardFingerprint, ProbabilityTable>>(recent.entrySet()) : null;
+		}
+		if (pending != null) {
+			reused.increment();
+			try {
+				return pending.join();
+			} catch (CompletionException e) {
+				//rethrow the building thread's own failure, so the batch fails the same way whichever reports it first
+				if (e.getCause() instanceof Error)
+					throw (Error) e.getCause();
+				throw (RuntimeException) e.getCause();
+			}
+		}
+		
+		try {
+			ProbabilityTable table = buildTable(board, fingerprint, candidates);
+			synchronized (recent) {
+				recent.put(fingerprint, table);
+				building.remove(fingerprint);
+			}
+			ours.complete(table);
+			return table;
+		} catch (Throwable e) {
+			synchronized (recent) {
+				building.remove(fingerprint);
+			}
+			ours.completeExceptionally(e);
+			throw e;
+		}
+	}
+	
+	//builds the table for one board in full, or incrementally from the closest of the candidates
+	private ProbabilityTable buildTable(Board board, BoardFingerprint fingerprint, List<Map.Entry<BoardFingerprint, ProbabilityTable>> candidates) {
+		/*
+		 * Rows which can land on a changed space are rewalked, so beyond a few changed 
+		 * spaces an incremental build saves little; half the board is a generous limit.
+		 */
+		ProbabilityTable base = null;
+		BitSet baseChanges = null;
+		for (Map.Entry<BoardFingerprint, ProbabilityTable> candidate : candidates) {
+			BitSet changes = fingerprint.changedSpaces(candidate.getKey());
+			if (changes != null && changes.cardinality() <= board.physicalSize() / 2
+					&& (baseChanges == null || changes.cardinality() < baseChanges.cardinality())) {
+				base = candidate.getValue();
+				baseChanges = changes;
+			}
+		}
+		
+		if (base == null) {
+			full.increment();
+			return ProbabilityTable.makeTable(board, depth, precision);
+		}
+		incremental.increment();
+		return base.withChange(board, BoardChange.spaces(baseChanges.stream().toArray()), depth);
+	}
+}
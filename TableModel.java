@@ -0,0 +1,14 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+/**
+ * The model a ProbabilityTable's probabilities come from. Only exact tables can be rebuilt
+ * for a changed board with withChange, since the other models can't be derived from them.
+ */
+/*package*/ enum TableModel {
+	/** Every outcome of every turn walked, cards drawn at random, by a ProbabilityCalculator */
+	EXACT,
+	/** Cards drawn in order, with the position of every deck tracked, by a DeckStateCalculator */
+	DECK_STATE,
+	/** Estimated from random turns by a MonteCarloSimulator */
+	ESTIMATED
+}
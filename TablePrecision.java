@@ -0,0 +1,12 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+/**
+ * The precision with which a ProbabilityTable stores its per-turn probabilities.
+ * Calculation is always done in double precision; this only affects storage.
+ */
+public enum TablePrecision {
+	/** Full double precision, eight bytes per probability */
+	DOUBLE,
+	/** Single precision, four bytes per probability. Useful when keeping deep tables for many boards. */
+	FLOAT
+}
@@ -0,0 +1,47 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+import com.benpochily.monopoly.board.Board;
+
+/**
+ * Receives the tables built by a TableBatchBuilder as they finish. Tables are delivered in 
+ * the order they finish rather than the order the boards were given, so each comes with the 
+ * position of its board in the batch. Calls are never made concurrently.
+ * @see TableBatchBuilder
+ */
+@FunctionalInterface
+public interface TableSink {
+	
+	/**
+	 * Receives a finished table
+	 * @param index the position of the board in the batch, starting from 0
+	 * @param board the board the table was built for
+	 * @param table the table
+	 * @throws IOException if the table can't be stored, which stops the batch
+	 */
+	void accept(long index, Board board, ProbabilityTable table) throws IOException;
+	
+	/**
+	 * Returns a sink which puts each table into a map, keyed on the position of its board
+	 * @param tables the map to fill
+	 * @return the sink
+	 */
+	static TableSink toMap(Map<Long, ProbabilityTable> tables) {
+		return (index, board, table) -> tables.put(index, table);
+	}
+	
+	/**
+	 * Returns a sink which saves each table as a snapshot in a directory, named after the 
+	 * position of its board, so a batch need never hold more tables than it is building.
+	 * @see ProbabilityTable#save(Path)
+	 * @see ProbabilityTable#load(Path)
+	 * @param directory the existing directory to save in
+	 * @return the sink
+	 */
+	static TableSink toDirectory(Path directory) {
+		return (index, board, table) -> table.save(directory.resolve("table-" + index + ".bin"));
+	}
+}
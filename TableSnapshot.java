@@ -0,0 +1,257 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes ProbabilityTables as binary snapshot files.
+ * 
+ * A snapshot is little-endian and laid out as follows:
+ * 1. A header: magic number, format version, board size, storage precision, number of physical
+ *    spaces, number of turns in jail and the model the table comes from (one int each)
+ * 2. For each jail strategy, short stay first: the number of stored turns and whether the mid
+ *    matrix follows (one int each), the steady state (size doubles), the sparse Markov matrix, the
+ *    sparse Markov + mid matrix, the sparse mid matrix if present, the jail policy (the number of
+ *    leave probabilities as an int, then each as a double), padding to a multiple of eight bytes,
+ *    and finally every stored turn in TableStorage order
+ * 3. The CRC32 checksum of everything before it, as a long
+ * 
+ * Snapshots are loaded by memory-mapping the file. The per-turn probabilities are read
+ * straight from the mapped pages, so loading costs little more than checking the checksum.
+ * The mid matrices are saved so that withChange on a loaded table copies unchanged rows as it
+ * would on the original; tables loaded from version 1 snapshots, which lack them, recalculate
+ * every row instead. The jail policies are saved so that it follows the same policies; tables
+ * loaded from snapshots before version 3 are taken to follow the usual jail stays. The split of 
+ * the states between spaces and jail and the model are saved so that withChange can tell which
+ * boards it may build on; tables loaded from snapshots before version 4 are taken to be exact,
+ * with an unknown split, so withChange builds their changed boards in full. Every header field
+ * is checked against the size of the file before use.
+ */
+/*package*/ final class TableSnapshot {
+	private static final int MAGIC = 0x4D505442; //"MPTB"
+	private static final int VERSION = 4;
+	private static final int VERSION_WITHOUT_MODEL = 3;
+	private static final int VERSION_WITHOUT_POLICY = 2;
+	private static final int VERSION_WITHOUT_MID = 1;
+	private static final int BUFFER_BYTES = 1 << 16;
+	
+	private TableSnapshot() {
+	}
+	
+	/**
+	 * Writes a table to a snapshot file, replacing the file if it exists. Only the turns
+	 * a table actually stores are written, so a lazily built table is saved with the
+	 * turns calculated so far.
+	 * @param table the table to save
+	 * @param path the file to write
+	 * @throws IOException if the file can't be written
+	 */
+	public static final void save(ProbabilityTable table, Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			CRC32 crc = new CRC32();
+			TableStorage storage = table.storage(false);
+			int n = storage.size();
+			
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(storage.precision().ordinal())
+					.putInt(table.physicalSize()).putInt(table.maxTurnsInJail()).putInt(table.model().ordinal());
+			write(channel, crc, buffer);
+			
+			for (boolean stayInJail : new boolean[] { false, true }) {
+				storage = table.storage(stayInJail);
+				//read once, since a lazily built table may be extended while it is saved
+				int depth = storage.storedDepth();
+				SparseMatrix markov = table.markovMatrix(stayInJail);
+				SparseMatrix oneTurn = table.oneTurnMatrix(stayInJail);
+				SparseMatrix mid = table.midMatrix(stayInJail);
+				double[] steadyState = table.steadyState(stayInJail);
+				double[] leaveProbabilities = table.policy(stayInJail).leaveProbabilities();
+				ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES + n * Double.BYTES + markov.serializedSize() + oneTurn.serializedSize() 
+						+ (mid == null ? 0 : mid.serializedSize()) + Integer.BYTES + leaveProbabilities.length * Double.BYTES + Long.BYTES)
+						.order(ByteOrder.LITTLE_ENDIAN);
+				header.putInt(depth).putInt(mid == null ? 0 : 1);
+				for (int i = 0; i < n; i++)
+					header.putDouble(steadyState[i]);
+				markov.writeTo(header);
+				oneTurn.writeTo(header);
+				if (mid != null)
+					mid.writeTo(header);
+				header.putInt(leaveProbabilities.length);
+				for (double p : leaveProbabilities)
+					header.putDouble(p);
+				while ((channel.position() + header.position()) % Double.BYTES != 0)
+					header.put((byte) 0);
+				write(channel, crc, header);
+				
+				for (int turn = 0; turn < depth; turn++) {
+					for (int origin = 0; origin < n; origin++) {
+						for (int destination = 0; destination < n; destination++) {
+							if (buffer.remaining() < Double.BYTES)
+								write(channel, crc, buffer);
+							if (storage.precision() == TablePrecision.FLOAT)
+								buffer.putFloat((float) storage.get(turn, origin, destination));
+							else
+								buffer.putDouble(storage.get(turn, origin, destination));
+						}
+					}
+				}
+				write(channel, crc, buffer);
+			}
+			
+			buffer.putLong(crc.getValue());
+			write(channel, null, buffer);
+		}
+	}
+	
+	/**
+	 * Loads a table from a snapshot file written by save
+	 * @param path the file to read
+	 * @param listener the listener to report the loading of each jail strategy and every lookup to
+	 * @return an immutable, thread-safe table of probabilities, backed by the mapped file
+	 * @throws IOException if the file can't be read, is corrupt or is from an unsupported version
+	 */
+	public static final ProbabilityTable load(Path path, ProbabilityTableListener listener) throws IOException {
+		long start = System.nanoTime();
+		MappedByteBuffer mapped;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			//a single mapping is indexed by int
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException(path + " is too large to load, at " + channel.size() + " bytes");
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.limit() < 4 * Integer.BYTES + Long.BYTES || buffer.getInt(0) != MAGIC)
+			throw new IOException(path + " is not a probability table snapshot");
+		int version = buffer.getInt(Integer.BYTES);
+		if (version != VERSION && version != VERSION_WITHOUT_MODEL && version != VERSION_WITHOUT_POLICY && version != VERSION_WITHOUT_MID)
+			throw new IOException(path + " has unsupported snapshot version " + version);
+		
+		CRC32 crc = new CRC32();
+		ByteBuffer content = buffer.duplicate();
+		content.limit(buffer.limit() - Long.BYTES);
+		crc.update(content);
+		if (crc.getValue() != buffer.getLong(buffer.limit() - Long.BYTES))
+			throw new IOException(path + " failed its checksum");
+		
+		buffer.position(2 * Integer.BYTES);
+		//everything after this point is read from content, so a corrupt size can't read into the checksum
+		content.position(buffer.position());
+		content.order(ByteOrder.LITTLE_ENDIAN);
+		int n = content.getInt();
+		int precisionOrdinal = content.getInt();
+		if (n <= 0)
+			throw new IOException(path + " is corrupt: it has " + n + " spaces");
+		if (precisionOrdinal < 0 || precisionOrdinal >= TablePrecision.values().length)
+			throw new IOException(path + " is corrupt: it has unknown precision " + precisionOrdinal);
+		TablePrecision precision = TablePrecision.values()[precisionOrdinal];
+		int physicalSize = 0, maxTurnsInJail = 0;
+		TableModel model = TableModel.EXACT;
+		if (version >= VERSION) {
+			if (content.remaining() < 3 * Integer.BYTES)
+				throw new IOException(path + " is corrupt: its header runs past the end of the file");
+			physicalSize = content.getInt();
+			maxTurnsInJail = content.getInt();
+			int modelOrdinal = content.getInt();
+			if (physicalSize <= 0 || maxTurnsInJail < 0 || (long) physicalSize + maxTurnsInJail != n)
+				throw new IOException(path + " is corrupt: " + physicalSize + " spaces and " + maxTurnsInJail + " turns in jail don't make " + n + " states");
+			if (modelOrdinal < 0 || modelOrdinal >= TableModel.values().length)
+				throw new IOException(path + " is corrupt: it has unknown model " + modelOrdinal);
+			model = TableModel.values()[modelOrdinal];
+		}
+		int valueBytes = precision == TablePrecision.FLOAT ? Float.BYTES : Double.BYTES;
+		
+		TableStorage[] storage = new TableStorage[2];
+		double[][] steadyState = new double[2][];
+		SparseMatrix[] markov = new SparseMatrix[2];
+		SparseMatrix[] oneTurn = new SparseMatrix[2];
+		SparseMatrix[] mid = new SparseMatrix[2];
+		JailPolicy[] policy = { JailPolicy.of(false), JailPolicy.of(true) };
+		for (int s = 0; s < 2; s++) {
+			if (content.remaining() < 2 * Integer.BYTES + (long) n * Double.BYTES)
+				throw new IOException(path + " is corrupt: its steady state runs past the end of the file");
+			int depth = content.getInt();
+			int hasMid = content.getInt();
+			if (depth < 0)
+				throw new IOException(path + " is corrupt: it stores " + depth + " turns");
+			if (hasMid != 0 && (hasMid != 1 || version == VERSION_WITHOUT_MID))
+				throw new IOException(path + " is corrupt: it has an invalid mid matrix flag " + hasMid);
+			steadyState[s] = new double[n];
+			for (int i = 0; i < n; i++)
+				steadyState[s][i] = content.getDouble();
+			markov[s] = readMatrix(content, n, path);
+			oneTurn[s] = readMatrix(content, n, path);
+			if (hasMid == 1)
+				mid[s] = readMatrix(content, n, path);
+			if (version >= VERSION)
+				policy[s] = readPolicy(content, path);
+			while (content.position() % Double.BYTES != 0 && content.hasRemaining())
+				content.get();
+			
+			long tableBytes;
+			try {
+				tableBytes = Math.multiplyExact(Math.multiplyExact((long) depth, (long) n * n), valueBytes);
+			} catch (ArithmeticException e) {
+				throw new IOException(path + " is corrupt: its table size overflows", e);
+			}
+			if (tableBytes > content.remaining())
+				throw new IOException(path + " is corrupt: its table runs past the end of the file");
+			buffer.position(content.position());
+			ByteBuffer table = buffer.duplicate();
+			table.limit(buffer.position() + (int) tableBytes);
+			storage[s] = new MappedTableStorage(table.slice().order(ByteOrder.LITTLE_ENDIAN), depth, n, precision);
+			content.position(buffer.position() + (int) tableBytes);
+		}
+		
+		long nanos = System.nanoTime() - start;
+		for (int s = 0; s < 2; s++)
+			listener.tableBuilt(s == 1, storage[s].depth(), nanos, storage[s].footprint());
+		return new ProbabilityTable(storage[0], steadyState[0], markov[0], oneTurn[0], storage[1], steadyState[1], markov[1], oneTurn[1],
+				mid[0], mid[1], physicalSize, maxTurnsInJail, model, policy[0], policy[1], listener);
+	}
+	
+	//reads a jail policy
+	private static JailPolicy readPolicy(ByteBuffer buffer, Path path) throws IOException {
+		if (buffer.remaining() < Integer.BYTES)
+			throw new IOException(path + " is corrupt: its jail policy runs past the end of the file");
+		int count = buffer.getInt();
+		if (count < 1 || count > buffer.remaining() / Double.BYTES)
+			throw new IOException(path + " is corrupt: its jail policy has " + count + " leave probabilities");
+		double[] leaveProbabilities = new double[count];
+		for (int i = 0; i < count; i++)
+			leaveProbabilities[i] = buffer.getDouble();
+		try {
+			return JailPolicy.of(leaveProbabilities);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(path + " is corrupt: " + e.getMessage(), e);
+		}
+	}
+	
+	//reads a sparse matrix, which must be size by size
+	private static SparseMatrix readMatrix(ByteBuffer buffer, int size, Path path) throws IOException {
+		SparseMatrix matrix;
+		try {
+			matrix = SparseMatrix.readFrom(buffer);
+		} catch (IOException e) {
+			throw new IOException(path + " is corrupt: " + e.getMessage(), e);
+		}
+		if (matrix.size() != size)
+			throw new IOException(path + " is corrupt: it has a matrix of size " + matrix.size() + " on a board of " + size + " spaces");
+		return matrix;
+	}
+	
+	//writes the contents of a buffer in full, adding them to the checksum, and clears it for reuse
+	private static void write(FileChannel channel, CRC32 crc, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		if (crc != null)
+			crc.update(buffer.duplicate());
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+}
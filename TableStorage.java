@@ -0,0 +1,177 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.util.BitSet;
+
+/**
+ * Flat, contiguous storage for a table of per-turn probabilities.
+ * Rather than a double[depth][size][size] of small row arrays, all values are kept
+ * in a single primitive array, indexed [turn][origin][destination] in row-major order.
+ * Used as a component of a ProbabilityTable
+ * @see ProbabilityTable
+ */
+/*package*/ abstract class TableStorage {
+	private final int depth;
+	private final int size;
+	
+	/**
+	 * Returns storage of the requested precision for a flat table of probabilities
+	 * @param table the probabilities, laid out as described by index()
+	 * @param depth the number of turns in the table
+	 * @param size the number of spaces (including jail states) on the board
+	 * @param precision the precision to store values with
+	 * @return the storage
+	 */
+	public static final TableStorage create(double[] table, int depth, int size, TablePrecision precision) {
+		return precision == TablePrecision.FLOAT ? new FloatTableStorage(table, depth, size) : new DoubleTableStorage(table, depth, size);
+	}
+	
+	/**
+	 * Returns the number of probabilities in a flat table, checking that it fits in one array.
+	 * Tables should be allocated with this, so that no index into them can overflow.
+	 * @param depth the number of turns in the table
+	 * @param size the number of spaces (including jail states) on the board
+	 * @return depth * size * size
+	 * @throws IllegalArgumentException if depth or size is negative, or the table would hold 
+	 * more than Integer.MAX_VALUE probabilities
+	 */
+	public static final int length(int depth, int size) {
+		if (depth < 0 || size < 0)
+			throw new IllegalArgumentException("a table can't have " + depth + " turns of " + size + " states");
+		try {
+			return Math.toIntExact(Math.multiplyExact(Math.multiplyExact((long) depth, size), size));
+		} catch (ArithmeticException e) {
+			throw new IllegalArgumentException("a table of " + depth + " turns on a board of " + size + " states has more than " 
+					+ Integer.MAX_VALUE + " probabilities, too many for one array", e);
+		}
+	}
+	
+	//a storage of unbounded depth holds at most a turn at a time, so only a single turn need fit
+	protected TableStorage(int depth, int size) {
+		length(depth == Integer.MAX_VALUE ? 1 : depth, size);
+		this.depth = depth;
+		this.size = size;
+	}
+	
+	/**
+	 * @return the number of turns stored, or Integer.MAX_VALUE if turns are computed on demand
+	 */
+	public final int depth() {
+		return depth;
+	}
+	
+	/**
+	 * @return the number of turns which are actually held in memory, starting from turn 0
+	 */
+	public int storedDepth() {
+		return depth;
+	}
+	
+	/**
+	 * @return the number of spaces (including jail states) in each row
+	 */
+	public final int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns the position in the flat table of a single probability. It can't overflow, since
+	 * the length of the table was checked on construction.
+	 * @param turn the turn, from 0 to depth() - 1
+	 * @param origin the starting space
+	 * @param destination the target space
+	 * @return the index
+	 */
+	public final int index(int turn, int origin, int destination) {
+		return (turn * size + origin) * size + destination;
+	}
+	
+	/**
+	 * Returns the probability of ending on destination turn turns after starting on origin
+	 * @param turn the turn, from 0 to depth() - 1
+	 * @param origin the starting space
+	 * @param destination the target space
+	 * @return the probability
+	 */
+	public abstract double get(int turn, int origin, int destination);
+	
+	/**
+	 * Copies the probabilities of ending on every space turn turns after starting on origin.
+	 * Subclasses with contiguous rows should override this to copy them in bulk.
+	 * @param turn the turn, from 0 to depth() - 1
+	 * @param origin the starting space
+	 * @param result the array to copy into
+	 * @param offset the index in result to copy the first probability to
+	 */
+	public void copyRow(int turn, int origin, double[] result, int offset) {
+		for (int i = 0; i < size; i++)
+			result[offset + i] = get(turn, origin, i);
+	}
+	
+	/**
+	 * Returns the sum of the probabilities of ending on every space turn turns after 
+	 * starting on origin, each multiplied by that space's weight.
+	 * Subclasses with contiguous rows should override this to avoid a call per space.
+	 * @param turn the turn, from 0 to depth() - 1
+	 * @param origin the starting space
+	 * @param weights a weight for every space, indexed by ID
+	 * @return the weighted sum
+	 */
+	public double dot(int turn, int origin, double[] weights) {
+		double sum = 0;
+		for (int i = 0; i < size; i++)
+			sum += get(turn, origin, i) * weights[i];
+		return sum;
+	}
+	
+	/**
+	 * Returns the sum of the probabilities of ending on each of a set of spaces turn turns
+	 * after starting on origin
+	 * @param turn the turn, from 0 to depth() - 1
+	 * @param origin the starting space
+	 * @param spaces the IDs of the spaces to sum
+	 * @return the sum
+	 */
+	public double sum(int turn, int origin, BitSet spaces) {
+		double sum = 0;
+		for (int i = spaces.nextSetBit(0); i >= 0 && i < size; i = spaces.nextSetBit(i + 1))
+			sum += get(turn, origin, i);
+		return sum;
+	}
+	
+	/*
+	 * The dot product of the size() values from offset with weights. Four independent
+	 * partial sums keep the additions from waiting on one another, so the JIT can unroll
+	 * and pipeline the loop.
+	 */
+	protected final double dot(double[] values, int offset, double[] weights) {
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		int i = 0;
+		for (; i + 3 < size; i += 4) {
+			s0 += values[offset + i] * weights[i];
+			s1 += values[offset + i + 1] * weights[i + 1];
+			s2 += values[offset + i + 2] * weights[i + 2];
+			s3 += values[offset + i + 3] * weights[i + 3];
+		}
+		for (; i < size; i++)
+			s0 += values[offset + i] * weights[i];
+		return (s0 + s1) + (s2 + s3);
+	}
+	
+	//the sum of the values at offset plus each ID in spaces
+	protected final double sum(double[] values, int offset, BitSet spaces) {
+		double sum = 0;
+		for (int i = spaces.nextSetBit(0); i >= 0 && i < size; i = spaces.nextSetBit(i + 1))
+			sum += values[offset + i];
+		return sum;
+	}
+	
+	/**
+	 * @return the approximate number of bytes used to store the table
+	 */
+	public abstract long footprint();
+	
+	/**
+	 * @return the precision values are stored with
+	 */
+	public abstract TablePrecision precision();
+}
@@ -0,0 +1,163 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * How far a ProbabilityTable has drifted from the identities its probabilities must satisfy,
+ * for checking that a faster way of building or storing tables (float precision, a different
+ * summation, a new engine) still gives the right answers. Three things are checked for each
+ * jail strategy:
+ * 
+ * 1. Every row of the one-turn Markov matrix sums to 1, except the rows of states no turn can
+ * start in (such as Go To Jail), which are entirely 0.
+ * 2. The steady state distribution of the Markov chain sums to 1 and is unchanged by a turn. The
+ * table stores the steady state with mid landings added, s = p(I + mid), so p is solved for first.
+ * 3. Each stored turn follows from the one before. The probabilities of turn x from origin A
+ * sum to the expected number of landings in that turn, and since turn x + 1 is turn x one step
+ * of the Markov matrix M later, those sums must satisfy S(x + 1, A) = sum over B of M[A][B] S(x, B),
+ * with S(0, A) the sum of row A of M + mid. The drift of a turn is the largest difference 
+ * between the two sides, so rounding error compounding over deep tables shows up turn by turn.
+ * 
+ * Validation is a separate pass over a finished table, so tables which are never validated
+ * pay nothing for it.
+ * @see ProbabilityTable#validate()
+ */
+public final class TableValidation {
+	private final int depth;
+	//indexed by jail strategy, stayInJail ? 1 : 0
+	private final double[] rowDrift = new double[2];
+	private final double[] steadyStateDrift = new double[2];
+	private final double[][] turnDrift;
+	
+	/*package*/ TableValidation(ProbabilityTable table, int depth) {
+		this.depth = depth;
+		turnDrift = new double[2][depth];
+		for (int s = 0; s < 2; s++)
+			validate(table, s == 1);
+	}
+	
+	private void validate(ProbabilityTable table, boolean stayInJail) {
+		int s = stayInJail ? 1 : 0;
+		SparseMatrix markov = table.markovMatrix(stayInJail);
+		SparseMatrix oneTurn = table.oneTurnMatrix(stayInJail);
+		TableStorage storage = table.storage(stayInJail);
+		int n = markov.size();
+		double[] row = new double[n];
+		
+		double[] expected = new double[n];
+		//transposed, so the steady state can be solved for as a column: (I + mid)^T p^T = s^T
+		SimpleMatrix landings = new SimpleMatrix(n, n);
+		for (int i = 0; i < n; i++) {
+			markov.copyRow(i, row);
+			double sum = sum(row);
+			if (sum != 0.0)
+				rowDrift[s] = Math.max(rowDrift[s], Math.abs(sum - 1.0));
+			for (int j = 0; j < n; j++)
+				landings.set(j, i, (i == j ? 1.0 : 0.0) - row[j]);
+			oneTurn.copyRow(i, row);
+			expected[i] = sum(row);
+			for (int j = 0; j < n; j++)
+				landings.set(j, i, landings.get(j, i) + row[j]);
+		}
+		
+		double[] steadyState = table.steadyState(stayInJail);
+		SimpleMatrix added = new SimpleMatrix(n, 1);
+		for (int i = 0; i < n; i++)
+			added.set(i, 0, steadyState[i]);
+		SimpleMatrix solved = landings.solve(added);
+		double[] distribution = new double[n];
+		for (int i = 0; i < n; i++)
+			distribution[i] = solved.get(i, 0);
+		steadyStateDrift[s] = Math.abs(sum(distribution) - 1.0);
+		markov.multiply(distribution, 0, row, 0);
+		for (int j = 0; j < n; j++)
+			steadyStateDrift[s] = Math.max(steadyStateDrift[s], Math.abs(row[j] - distribution[j]));
+		
+		double[] sums = new double[n];
+		for (int turn = 0; turn < depth; turn++) {
+			double drift = 0.0;
+			for (int origin = 0; origin < n; origin++) {
+				storage.copyRow(turn, origin, row, 0);
+				sums[origin] = sum(row);
+				drift = Math.max(drift, Math.abs(sums[origin] - expected[origin]));
+			}
+			turnDrift[s][turn] = drift;
+			//what the next turn's sums should be, one step of the Markov matrix on from this turn's
+			for (int origin = 0; origin < n; origin++) {
+				markov.copyRow(origin, row);
+				double next = 0.0;
+				for (int k = 0; k < n; k++)
+					next += row[k] * sums[k];
+				expected[origin] = next;
+			}
+		}
+	}
+	
+	private static double sum(double[] values) {
+		double sum = 0.0;
+		for (double value : values)
+			sum += value;
+		return sum;
+	}
+	
+	/**
+	 * @return the number of turns validated
+	 */
+	public final int depth() {
+		return depth;
+	}
+	
+	/**
+	 * @param stayInJail the jail strategy
+	 * @return the largest difference from 1 of the sum of a row of the one-turn Markov matrix
+	 */
+	public final double getRowDrift(boolean stayInJail) {
+		return rowDrift[stayInJail ? 1 : 0];
+	}
+	
+	/**
+	 * @param stayInJail the jail strategy
+	 * @return the larger of the difference from 1 of the sum of the steady state distribution
+	 * and the largest change to it over a turn
+	 */
+	public final double getSteadyStateDrift(boolean stayInJail) {
+		return steadyStateDrift[stayInJail ? 1 : 0];
+	}
+	
+	/**
+	 * @param turn the turn, from 0 to depth() - 1
+	 * @param stayInJail the jail strategy
+	 * @return the largest difference, over every starting space, between the expected landings
+	 * stored for this turn and those which follow from the turn before
+	 */
+	public final double getDrift(int turn, boolean stayInJail) {
+		return turnDrift[stayInJail ? 1 : 0][turn];
+	}
+	
+	/**
+	 * @return the largest drift of any kind, for either jail strategy
+	 */
+	public final double getMaxDrift() {
+		double max = 0.0;
+		for (int s = 0; s < 2; s++) {
+			max = Math.max(max, Math.max(rowDrift[s], steadyStateDrift[s]));
+			for (double drift : turnDrift[s])
+				max = Math.max(max, drift);
+		}
+		return max;
+	}
+	
+	/**
+	 * @param tolerance the largest acceptable drift
+	 * @return whether every drift is within tolerance
+	 */
+	public final boolean isValid(double tolerance) {
+		return getMaxDrift() <= tolerance;
+	}
+	
+	@Override
+	public String toString() {
+		return "TableValidation[depth " + depth + ", row drift " + Math.max(rowDrift[0], rowDrift[1]) 
+				+ ", steady state drift " + Math.max(steadyStateDrift[0], steadyStateDrift[1]) + ", max drift " + getMaxDrift() + "]";
+	}
+}
@@ -0,0 +1,28 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the probability table benchmarks with GC allocation profiling, so allocation
+ * rates (gc.alloc.rate.norm) are reported alongside timings.
+ * Any arguments are treated as benchmark name patterns; with none, every benchmark is run.
+ */
+public final class BenchmarkRunner {
+	
+	private BenchmarkRunner() {
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		OptionsBuilder options = new OptionsBuilder();
+		if (args.length == 0)
+			options.include(ProbabilityTableBenchmark.class.getSimpleName());
+		for (String pattern : args)
+			options.include(pattern);
+		Options built = options.addProfiler(GCProfiler.class).build();
+		new Runner(built).run();
+	}
+}
@@ -0,0 +1,133 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks each stage of building and using a ProbabilityTable separately:
+ * the move tree walk from a single space, building the transition tables,
+ * solving for the steady state, propagating the table to a given depth and
+ * looking probabilities up.
+ * @see BenchmarkRunner
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProbabilityTableBenchmark {
+	private static final int LOOKUPS = 1024;
+	
+	/** Physical spaces on the board; 40 is the standard board, larger sizes are extended variants */
+	@Param({ "40", "160" })
+	public int boardSize;
+	
+	private StubBoard board;
+	private ProbBoard probBoard;
+	private ProbabilityCalculator calc;
+	private ProbAccumulator accumulator;
+	private int nextSpace;
+	
+	/**
+	 * State for the benchmarks which depend on the depth of the table
+	 */
+	@State(Scope.Benchmark)
+	public static class Depth {
+		/** Turns calculated by getTable */
+		@Param({ "1", "10", "50" })
+		public int depth;
+		
+		private ProbabilityTable table;
+		private int[] origins;
+		private int[] destinations;
+		private int[] turns;
+		
+		@Setup(Level.Trial)
+		public void setUp(ProbabilityTableBenchmark benchmark) {
+			table = ProbabilityTable.makeTable(benchmark.board, depth);
+			int size = benchmark.probBoard.size();
+			Random random = new Random(42);
+			origins = new int[LOOKUPS];
+			destinations = new int[LOOKUPS];
+			turns = new int[LOOKUPS];
+			for (int i = 0; i < LOOKUPS; i++) {
+				origins[i] = random.nextInt(size);
+				destinations[i] = random.nextInt(size);
+				turns[i] = random.nextInt(depth);
+			}
+		}
+	}
+	
+	@Setup(Level.Trial)
+	public void setUp() {
+		board = new StubBoard(boardSize);
+		probBoard = new ProbBoard(board);
+		calc = new ProbabilityCalculator(board);
+		accumulator = new ProbAccumulator(probBoard.size());
+	}
+	
+	/** One move tree walk, from each space in turn */
+	@Benchmark
+	public void rollTreeWalk(Blackhole bh) {
+		nextSpace = (nextSpace + 1) % probBoard.size();
+		accumulator.reset();
+		probBoard.getProbFrom(nextSpace, nextSpace % 2 == 0, accumulator);
+		bh.consume(accumulator.endProb(nextSpace));
+	}
+	
+	/** Memoizing the forward distributions and walking every row of one transition table */
+	@Benchmark
+	public void buildTransitionTable(Blackhole bh) {
+		ProbBoard fresh = new ProbBoard(board);
+		double[] mid = new double[fresh.size()];
+		double[] end = new double[fresh.size()];
+		for (int i = 0; i < fresh.size(); i++) {
+			ProbAccumulator acc = new ProbAccumulator(fresh.size());
+			fresh.getProbFrom(i, false, acc);
+			acc.copyTo(mid, end);
+			bh.consume(end);
+		}
+	}
+	
+	@Benchmark
+	public SteadyStateSolution solveSteadyStateDense() {
+		return new DenseSteadyStateSolver().solve(calc.getMarkovMatrix(false), calc.getSparseMarkovMatrix(false), null);
+	}
+	
+	@Benchmark
+	public SteadyStateSolution solveSteadyStateIterative() {
+		return new IterativeSteadyStateSolver().solve(calc.getMarkovMatrix(false), calc.getSparseMarkovMatrix(false), null);
+	}
+	
+	@Benchmark
+	public double[] getTable(Depth state) {
+		return calc.getTable(state.depth, false);
+	}
+	
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@OperationsPerInvocation(LOOKUPS)
+	public double getProbability(Depth state) {
+		double sum = 0;
+		for (int i = 0; i < LOOKUPS; i++)
+			sum += state.table.getProbability(state.origins[i], state.destinations[i], state.turns[i], (i & 1) == 0);
+		return sum;
+	}
+}
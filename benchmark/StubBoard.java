@@ -0,0 +1,253 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import com.benpochily.monopoly.board.Board;
+import com.benpochily.monopoly.board.deck.Card;
+import com.benpochily.monopoly.board.deck.Deck;
+import com.benpochily.monopoly.board.space.CardSpace;
+import com.benpochily.monopoly.board.space.GoToSpace;
+import com.benpochily.monopoly.board.space.Jail;
+import com.benpochily.monopoly.board.space.Space;
+import com.benpochily.monopoly.board.space.SpaceType;
+import com.benpochily.monopoly.game.Dice;
+
+/**
+ * A self-contained Board for benchmarks and tests, so they need no game data.
+ * It follows the standard layout (Chance and Community Chest decks, Go To Jail, three turns
+ * in jail), repeated every 40 spaces for extended boards. Spaces past the last full block of 40
+ * are ordinary. Each block of 40 has one Chance
+ * and one Community Chest deck, shared by its three spaces of that type as in the real game.
+ * Cards which move to the nearest railroad or utility move forward to the next one on the
+ * whole board, wrapping past Go.
+ *
+ * The spaces, decks and cards are implemented here against the members of the board
+ * interfaces this package calls, so the only game object constructed is the standard Dice.
+ * The board library itself is still needed to compile and run it.
+ */
+/*package*/ final class StubBoard implements Board {
+	private final Space[] spaces;
+	private final Jail jail;
+	private final int maxTurnsInJail;
+	private final Dice dice = new Dice();
+	
+	/**
+	 * Constructs a new StubBoard
+	 * @param size the number of physical spaces, a multiple of 40
+	 */
+	StubBoard(int size) {
+		this(size, true);
+	}
+	
+	/**
+	 * Constructs a new StubBoard, optionally replacing Go To Jail with an ordinary space
+	 * @param size the number of physical spaces, a multiple of 40
+	 * @param goToJail whether space 30 of each block of 40 sends the player to jail
+	 */
+	StubBoard(int size, boolean goToJail) {
+		this(size, goToJail, 16);
+	}
+	
+	/**
+	 * Constructs a new StubBoard with a different number of turns in jail
+	 * @param size the number of physical spaces, at least 40
+	 * @param maxTurnsInJail the most turns a player can spend in jail, at least 1
+	 */
+	StubBoard(int size, int maxTurnsInJail) {
+		this(size, true, 0, 16, maxTurnsInJail);
+	}
+	
+	/**
+	 * Constructs a new StubBoard with shortened decks, keeping the first cards of each
+	 * @param size the number of physical spaces, a multiple of 40
+	 * @param goToJail whether space 30 of each block of 40 sends the player to jail
+	 * @param cardsPerDeck the number of cards in each deck, from 1 to 16; the first card of each is Advance to Go
+	 */
+	StubBoard(int size, boolean goToJail, int cardsPerDeck) {
+		this(size, goToJail, 0, cardsPerDeck);
+	}
+	
+	/**
+	 * Constructs a new StubBoard with shortened decks, keeping a run of cards from each
+	 * @param size the number of physical spaces, a multiple of 40
+	 * @param goToJail whether space 30 of each block of 40 sends the player to jail
+	 * @param firstCard the position in the full decks of the first card to keep, from 0 to 15
+	 * @param cardsPerDeck the number of cards to keep in each deck, at most 16 - firstCard
+	 */
+	StubBoard(int size, boolean goToJail, int firstCard, int cardsPerDeck) {
+		this(size, goToJail, firstCard, cardsPerDeck, 3);
+	}
+	
+	private StubBoard(int size, boolean goToJail, int firstCard, int cardsPerDeck, int maxTurnsInJail) {
+		spaces = new Space[size];
+		for (int i = 0; i < size; i++)
+			spaces[i] = new StubSpace(i, SpaceType.PROPERTY);
+		jail = new StubJail(size, spaces[10]);
+		this.maxTurnsInJail = maxTurnsInJail;
+		
+		for (int block = 0; block + 40 <= size; block += 40) {
+			final int offset = block;
+			List<Card> communityChest = new ArrayList<Card>();
+			communityChest.add(new StubCard(id -> spaces[0]));
+			communityChest.add(new StubCard(id -> jail));
+			while (communityChest.size() < 16)
+				communityChest.add(new StubCard(id -> spaces[id]));
+			
+			List<Card> chance = new ArrayList<Card>();
+			chance.add(new StubCard(id -> spaces[0]));
+			chance.add(new StubCard(id -> jail));
+			chance.add(new StubCard(id -> spaces[offset + 11]));
+			chance.add(new StubCard(id -> spaces[offset + 24]));
+			chance.add(new StubCard(id -> spaces[offset + 39]));
+			chance.add(new StubCard(id -> spaces[offset + 5]));
+			chance.add(new StubCard(id -> spaces[(id + size - 3) % size]));
+			chance.add(new StubCard(id -> spaces[nearestRailroad(id)]));
+			chance.add(new StubCard(id -> spaces[nearestRailroad(id)]));
+			chance.add(new StubCard(id -> spaces[nearestUtility(id)]));
+			while (chance.size() < 16)
+				chance.add(new StubCard(id -> spaces[id]));
+			
+			Deck communityChestDeck = new StubDeck(communityChest.subList(firstCard, firstCard + cardsPerDeck));
+			Deck chanceDeck = new StubDeck(chance.subList(firstCard, firstCard + cardsPerDeck));
+			for (int id : new int[] { 2, 17, 33 })
+				spaces[offset + id] = new StubCardSpace(offset + id, communityChestDeck);
+			for (int id : new int[] { 7, 22, 36 })
+				spaces[offset + id] = new StubCardSpace(offset + id, chanceDeck);
+			if (goToJail)
+				spaces[offset + 30] = new StubGoToSpace(offset + 30);
+		}
+	}
+	
+	/**
+	 * Returns the next railroad forward from a space; railroads are 5 spaces past every multiple of 10
+	 * @param id the ID of the space
+	 * @return the ID of the railroad
+	 */
+	/*package*/ final int nearestRailroad(int id) {
+		return (id + 10 - (id + 5) % 10) % spaces.length;
+	}
+	
+	/**
+	 * Returns the next utility forward from a space; utilities are 12 and 28 spaces into every block of 40
+	 * @param id the ID of the space
+	 * @return the ID of the utility
+	 */
+	/*package*/ final int nearestUtility(int id) {
+		int position = id % 40;
+		return (id - position + (position < 12 ? 12 : position < 28 ? 28 : 52)) % spaces.length;
+	}
+	
+	@Override
+	public int physicalSize() {
+		return spaces.length;
+	}
+	
+	@Override
+	public int maxTurnsInJail() {
+		return maxTurnsInJail;
+	}
+	
+	@Override
+	public Space getSpace(int id) {
+		return spaces[id];
+	}
+	
+	@Override
+	public Jail jail() {
+		return jail;
+	}
+	
+	@Override
+	public Dice dice() {
+		return dice;
+	}
+	
+	private static class StubSpace implements Space {
+		private final int id;
+		private final SpaceType type;
+		
+		StubSpace(int id, SpaceType type) {
+			this.id = id;
+			this.type = type;
+		}
+		
+		@Override
+		public int ID() {
+			return id;
+		}
+		
+		@Override
+		public SpaceType type() {
+			return type;
+		}
+	}
+	
+	private static final class StubCardSpace extends StubSpace implements CardSpace {
+		private final Deck deck;
+		
+		StubCardSpace(int id, Deck deck) {
+			super(id, SpaceType.CARD);
+			this.deck = deck;
+		}
+		
+		@Override
+		public Deck getDeck() {
+			return deck;
+		}
+	}
+	
+	private static final class StubGoToSpace extends StubSpace implements GoToSpace {
+		StubGoToSpace(int id) {
+			super(id, SpaceType.GOTO);
+		}
+	}
+	
+	private static final class StubJail extends StubSpace implements Jail {
+		private final Space justVisiting;
+		
+		StubJail(int id, Space justVisiting) {
+			super(id, SpaceType.JAIL);
+			this.justVisiting = justVisiting;
+		}
+		
+		@Override
+		public Space justVisiting() {
+			return justVisiting;
+		}
+	}
+	
+	private static final class StubDeck implements Deck {
+		private final List<Card> cards;
+		
+		StubDeck(List<Card> cards) {
+			this.cards = cards;
+		}
+		
+		@Override
+		public Iterator<Card> iterator() {
+			return cards.iterator();
+		}
+		
+		@Override
+		public int size() {
+			return cards.size();
+		}
+	}
+	
+	// a card which sends a player from the space with the given ID to a fixed or computed space
+	private static final class StubCard implements Card {
+		private final IntFunction<Space> destination;
+		
+		StubCard(IntFunction<Space> destination) {
+			this.destination = destination;
+		}
+		
+		@Override
+		public Space applyCard(Space space) {
+			return destination.apply(space.ID());
+		}
+	}
+}
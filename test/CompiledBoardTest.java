@@ -0,0 +1,68 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import com.benpochily.monopoly.game.Dice;
+
+/**
+ * Checks the compiled programs of a ProbBoard against walks of the move tree through its ProbSpaces
+ */
+public class CompiledBoardTest {
+	private static final double TOLERANCE = 1e-14;
+	private static final StubBoard[] BOARDS = { new StubBoard(40), new StubBoard(80), new StubBoard(40, false) };
+	private static final JailPolicy[] POLICIES = { JailPolicy.PAY_IMMEDIATELY, JailPolicy.STAY_FULL_TERM, 
+			JailPolicy.leaveWithProbability(0.5) };
+
+	@Test
+	public void turnsMatchProbSpaceWalk() {
+		for (StubBoard stub : BOARDS) {
+			ProbBoard board = new ProbBoard(stub);
+			for (JailPolicy policy : POLICIES) {
+				for (int start = 0; start < board.size(); start++) {
+					ProbAccumulator compiled = new ProbAccumulator(board.size());
+					board.getProbFrom(start, policy, compiled);
+					ProbAccumulator walked = new ProbAccumulator(board.size());
+					board.getSpace(start).getProbFrom(walked, policy);
+					assertSame(walked, compiled);
+				}
+			}
+		}
+	}
+	
+	/*
+	 * Each memoized roll is checked one level deep: its outcomes are walked through the ProbSpaces,
+	 * which roll again through the memoized rolls with one more double. Rolling doubles at the
+	 * deepest level goes to jail, so that level rolls no further and every level is checked in turn.
+	 */
+	@Test
+	public void rollsMatchProbSpaceWalk() {
+		for (StubBoard stub : BOARDS) {
+			ProbBoard board = new ProbBoard(stub);
+			RollDistribution rolls = board.rolls();
+			for (int numDoubles = 0; numDoubles < Dice.maxDoubles(); numDoubles++) {
+				for (int start = 0; start < board.physicalSize(); start++) {
+					ProbAccumulator compiled = new ProbAccumulator(board.size());
+					board.addForwardProb(compiled, start, numDoubles, 1);
+					ProbAccumulator walked = new ProbAccumulator(board.size());
+					for (int i = 0; i < rolls.size(); i++) {
+						if (rolls.isDoubles(i) && numDoubles >= Dice.maxDoubles() - 1)
+							board.jail().updateProbAndRoll(walked, numDoubles, rolls.probability(i), false);
+						else
+							board.nextSpace(board.getSpace(start), rolls.total(i)).updateProbAndRoll(walked, 
+									rolls.isDoubles(i) ? numDoubles + 1 : numDoubles, rolls.probability(i), rolls.isDoubles(i));
+					}
+					assertSame(walked, compiled);
+				}
+			}
+		}
+	}
+	
+	private static void assertSame(ProbAccumulator expected, ProbAccumulator actual) {
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.midProb(i), actual.midProb(i), TOLERANCE);
+			assertEquals(expected.endProb(i), actual.endProb(i), TOLERANCE);
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the deck-state chain by lumping it back to spaces: its Markov rows must still be distributions,
+ * and with one card per deck there is no deck state, so it must match the ordinary table. Trying each
+ * card alone also checks that walkDeckLanding agrees with updateProbAndRoll for every kind of card.
+ */
+public class DeckStateCalculatorTest {
+	private static final int DEPTH = 4;
+	private static final double TOLERANCE = 1e-10;
+	
+	@Test
+	public void lumpedRowsSumToOne() {
+		DeckStateCalculator calc = new DeckStateCalculator(new StubBoard(40, true, 4), null);
+		for (boolean stayInJail : new boolean[] { false, true }) {
+			SparseMatrix lumped = calc.getLumpedMatrix(false, stayInJail);
+			for (int row = 0; row < lumped.size(); row++) {
+				double total = 0;
+				for (int entry = lumped.rowStart(row); entry < lumped.rowStart(row + 1); entry++)
+					total += lumped.value(entry);
+				//Go To Jail is never the end of a turn, so nothing ever leaves it
+				assertEquals(row == 30 ? 0.0 : 1.0, total, TOLERANCE);
+			}
+		}
+	}
+	
+	@Test
+	public void singleCardDecksMatchOrdinaryTable() {
+		for (int card = 0; card < 16; card++) {
+			StubBoard stub = new StubBoard(40, card % 2 == 0, card, 1);
+			ProbabilityTable expected = ProbabilityTable.makeTable(stub, DEPTH);
+			ProbabilityTable actual = ProbabilityTable.makeDeckStateTable(stub, DEPTH, null);
+			for (boolean stayInJail : new boolean[] { false, true }) {
+				for (int d = 0; d < expected.size(); d++)
+					assertEquals(expected.getSteadyState(d, stayInJail), actual.getSteadyState(d, stayInJail), TOLERANCE);
+				for (int turn = 0; turn < DEPTH; turn++)
+					for (int o = 0; o < expected.size(); o++)
+						for (int d = 0; d < expected.size(); d++)
+							assertEquals(expected.getProbability(o, d, turn, stayInJail), actual.getProbability(o, d, turn, stayInJail), TOLERANCE);
+			}
+		}
+	}
+	
+	@Test
+	public void tooManyStatesIsRejected() {
+		//ten pairs of decks of 16 cards: far past MAX_STATES, and past a long if multiplied out in full
+		assertThrows(IllegalArgumentException.class, () -> new DeckStateCalculator(new StubBoard(400), null));
+	}
+}
@@ -0,0 +1,52 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that tables for jail policies keep their policies when rebuilt for a changed board
+ * or loaded from a snapshot
+ */
+public class JailPolicyTablesTest {
+	private static final int DEPTH = 6;
+	private static final double TOLERANCE = 1e-10;
+	private static final JailPolicy POLICY = JailPolicy.of(0.0, 0.5);
+	private static final JailPolicy POLICY_JAIL = JailPolicy.leaveOnTurn(1);
+	
+	@TempDir
+	Path directory;
+	
+	@Test
+	public void withChangeKeepsPolicies() {
+		StubBoard base = new StubBoard(40, true), variant = new StubBoard(40, false);
+		ProbabilityTable table = new JailPolicyTables(base).getTable(POLICY, POLICY_JAIL, DEPTH);
+		ProbabilityTable expected = new JailPolicyTables(variant).getTable(POLICY, POLICY_JAIL, DEPTH);
+		assertTablesEqual(expected, table.withChange(variant, BoardChange.spaces(30), DEPTH));
+		assertTablesEqual(expected, table.withChange(variant, BoardChange.everything(), DEPTH));
+	}
+	
+	@Test
+	public void loadedTableKeepsPolicies() throws IOException {
+		StubBoard base = new StubBoard(40, false), variant = new StubBoard(40, true);
+		Path path = directory.resolve("policy.snapshot");
+		new JailPolicyTables(base).getTable(POLICY, POLICY_JAIL, DEPTH).save(path);
+		ProbabilityTable expected = new JailPolicyTables(variant).getTable(POLICY, POLICY_JAIL, DEPTH);
+		assertTablesEqual(expected, ProbabilityTable.load(path).withChange(variant, BoardChange.spaces(30), DEPTH));
+	}
+	
+	private static void assertTablesEqual(ProbabilityTable expected, ProbabilityTable actual) {
+		for (boolean stayInJail : new boolean[] { false, true }) {
+			for (int d = 0; d < expected.size(); d++)
+				assertEquals(expected.getSteadyState(d, stayInJail), actual.getSteadyState(d, stayInJail), TOLERANCE);
+			for (int turn = 0; turn < DEPTH; turn++)
+				for (int o = 0; o < expected.size(); o++)
+					for (int d = 0; d < expected.size(); d++)
+						assertEquals(expected.getProbability(o, d, turn, stayInJail), actual.getProbability(o, d, turn, stayInJail), TOLERANCE);
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the simulator's estimates against the exact table, within their confidence intervals.
+ * With thousands of estimates some fall outside their 95% intervals by chance, so nearly all must
+ * be within one half-width, and every one within five standard errors of the exact probability
+ * plus three landings (the intervals themselves are too narrow to bound estimates made from a
+ * handful of landings). Steady states, estimated from batch means, must be within three
+ * half-widths. The seed is fixed, so the test is deterministic.
+ * 
+ * The simulator plays turns through sampleLanding, so this is also what holds the sampled rules
+ * to updateProbAndRoll: a landing the exact table gives no probability must never be sampled.
+ */
+public class MonteCarloSimulatorTest {
+	private static final int DEPTH = 3;
+	private static final int TRAJECTORIES = 4000;
+	private static final int BATCHES = 20;
+	private static final double WIDTHS = 3.0;
+	private static final double STANDARD_ERRORS = 5.0;
+	private static final double SLACK = 3.0 / TRAJECTORIES;
+	private static final double WITHIN_ONE_WIDTH = 0.9;
+	private static final double ROUNDING = 1e-12;
+	
+	@Test
+	public void estimatesMatchExactTable() {
+		StubBoard stub = new StubBoard(40);
+		ProbabilityTable exact = ProbabilityTable.makeTable(stub, DEPTH);
+		MonteCarloResult result = new MonteCarloSimulator(stub, 1234L).simulate(DEPTH, TRAJECTORIES, BATCHES);
+		
+		int estimates = 0, withinOneWidth = 0;
+		for (boolean stayInJail : new boolean[] { false, true }) {
+			for (int turn = 0; turn < DEPTH; turn++) {
+				for (int o = 0; o < exact.size(); o++) {
+					for (int d = 0; d < exact.size(); d++) {
+						double expected = exact.getProbability(o, d, turn, stayInJail);
+						double estimate = result.getProbability(o, d, turn, stayInJail);
+						double error = result.getProbabilityError(o, d, turn, stayInJail);
+						if (expected == 0.0) {
+							assertEquals(0.0, estimate, 0.0);
+							continue;
+						}
+						//a turn rarely lands on a space twice, so the variance of its landings is about the probability
+						assertEquals(expected, estimate, STANDARD_ERRORS * Math.sqrt(expected / TRAJECTORIES) + SLACK, 
+								"turn " + turn + " from " + o + " to " + d);
+						estimates++;
+						if (Math.abs(expected - estimate) <= error)
+							withinOneWidth++;
+					}
+				}
+			}
+			for (int d = 0; d < exact.size(); d++) {
+				//states never reached have no error, and an exact steady state of zero give or take rounding
+				double error = Math.max(result.getSteadyStateError(d, stayInJail), ROUNDING);
+				assertEquals(exact.getSteadyState(d, stayInJail), result.getSteadyState(d, stayInJail), WIDTHS * error, "steady state of " + d);
+			}
+		}
+		assertTrue(withinOneWidth >= WITHIN_ONE_WIDTH * estimates, withinOneWidth + " of " + estimates + " within their intervals");
+	}
+}
@@ -0,0 +1,63 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.BitSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks forecasts against the single-player table they are built from
+ */
+public class MultiPlayerForecasterTest {
+	private static final int ROUNDS = 5;
+	private static final double TOLERANCE = 1e-12;
+	private static final ProbabilityTable TABLE = ProbabilityTable.makeTable(new StubBoard(40), ROUNDS);
+	
+	@Test
+	public void oneOpponentMatchesTable() {
+		MultiPlayerForecaster forecaster = new MultiPlayerForecaster(TABLE, ROUNDS);
+		BitSet group = new BitSet();
+		group.set(16);
+		group.set(18);
+		group.set(19);
+		double[] weights = new double[TABLE.size()];
+		for (int i = 0; i < weights.length; i++)
+			weights[i] = i % 7;
+		for (boolean stayInJail : new boolean[] { false, true }) {
+			for (int origin = 0; origin < TABLE.size(); origin++) {
+				MultiPlayerForecast forecast = forecaster.forecast(new int[] { origin }, new boolean[] { stayInJail });
+				for (int round = 0; round < ROUNDS; round++) {
+					for (int space = 0; space < TABLE.size(); space++) {
+						double p = TABLE.getProbability(origin, space, round, stayInJail);
+						assertEquals(p, forecast.getExpectedVisits(space, round), TOLERANCE);
+						assertEquals(p, forecast.getHitProbability(space, round), TOLERANCE);
+					}
+					assertEquals(Math.min(TABLE.getExpectedLandings(origin, group, round, stayInJail), 1.0), 
+							forecast.getHitProbabilityBound(group, round), TOLERANCE);
+				}
+				assertEquals(TABLE.getWeightedSum(origin, weights, 1, ROUNDS, stayInJail), forecast.getWeightedVisits(weights, 1, ROUNDS), TOLERANCE);
+			}
+		}
+	}
+	
+	@Test
+	public void playersCombineIndependently() {
+		MultiPlayerForecaster forecaster = new MultiPlayerForecaster(TABLE, ROUNDS);
+		int[] positions = { 0, 24, TABLE.size() - 1 };
+		boolean[] stayInJail = { false, true, true };
+		MultiPlayerForecast forecast = forecaster.forecast(positions, stayInJail);
+		for (int round = 0; round < ROUNDS; round++) {
+			for (int space = 0; space < TABLE.size(); space++) {
+				double visits = 0, miss = 1;
+				for (int p = 0; p < positions.length; p++) {
+					double probability = TABLE.getProbability(positions[p], space, round, stayInJail[p]);
+					visits += probability;
+					miss *= 1 - probability;
+				}
+				assertEquals(visits, forecast.getExpectedVisits(space, round), TOLERANCE);
+				assertEquals(1 - miss, forecast.getHitProbability(space, round), TOLERANCE);
+			}
+		}
+	}
+}
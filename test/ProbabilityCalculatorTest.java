@@ -0,0 +1,170 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.BitSet;
+
+import org.junit.jupiter.api.Test;
+
+import com.benpochily.monopoly.board.Board;
+import com.benpochily.monopoly.board.deck.Card;
+import com.benpochily.monopoly.board.space.CardSpace;
+import com.benpochily.monopoly.board.space.Space;
+import com.benpochily.monopoly.board.space.SpaceType;
+import com.benpochily.monopoly.game.Dice;
+
+/**
+ * Checks the transition tables of a ProbabilityCalculator against the original recursive
+ * move tree walk, which enumerates every ordered roll and every card at each landing
+ */
+public class ProbabilityCalculatorTest {
+	private static final double TOLERANCE = 1e-12;
+	private static final StubBoard[] BOARDS = { new StubBoard(40), new StubBoard(80), new StubBoard(40, false) };
+	
+	@Test
+	public void transitionTablesMatchBaselineWalk() {
+		for (StubBoard stub : BOARDS) {
+			ProbabilityCalculator calc = new ProbabilityCalculator(stub);
+			for (boolean stayInJail : new boolean[] { false, true }) {
+				for (int start = 0; start < calc.size(); start++) {
+					BaselineWalk walk = new BaselineWalk(stub);
+					walk.getProbFrom(start, stayInJail);
+					for (int j = 0; j < calc.size(); j++) {
+						assertEquals(walk.midProb[j], calc.getMidMatrix(stayInJail)[start][j], TOLERANCE);
+						assertEquals(walk.endProb[j], calc.getMarkovMatrix(stayInJail)[start][j], TOLERANCE);
+					}
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void incrementalBuildMatchesFullBuild() {
+		StubBoard[][] changes = { { new StubBoard(40, true), new StubBoard(40, false) }, { new StubBoard(40, false), new StubBoard(40, true) } };
+		BitSet changed = new BitSet();
+		changed.set(30);
+		for (StubBoard[] change : changes) {
+			ProbabilityTable previous = ProbabilityTable.makeTable(change[0], 1);
+			ProbabilityCalculator full = new ProbabilityCalculator(change[1]);
+			ProbabilityCalculator incremental = new ProbabilityCalculator(change[1], null, previous, changed, new DenseSteadyStateSolver());
+			assertTrue(incremental.board().forwardNodes() < full.board().forwardNodes());
+			for (boolean stayInJail : new boolean[] { false, true }) {
+				for (int start = 0; start < full.size(); start++) {
+					for (int j = 0; j < full.size(); j++) {
+						assertEquals(full.getMidMatrix(stayInJail)[start][j], incremental.getMidMatrix(stayInJail)[start][j], TOLERANCE);
+						assertEquals(full.getMarkovMatrix(stayInJail)[start][j], incremental.getMarkovMatrix(stayInJail)[start][j], TOLERANCE);
+					}
+				}
+				for (int i = 0; i < full.size(); i++)
+					assertEquals(full.getSteadyState(stayInJail)[i], incremental.getSteadyState(stayInJail)[i], TOLERANCE);
+			}
+		}
+	}
+	
+	@Test
+	public void iterativeSolverMatchesDenseSolver() {
+		StubBoard stub = new StubBoard(40);
+		ProbabilityCalculator dense = new ProbabilityCalculator(stub, null, ProbabilityTableListener.NONE, Summation.NAIVE, new DenseSteadyStateSolver());
+		ProbabilityCalculator iterative = new ProbabilityCalculator(stub, null, ProbabilityTableListener.NONE, Summation.NAIVE, new IterativeSteadyStateSolver());
+		for (boolean stayInJail : new boolean[] { false, true }) {
+			double[] expected = dense.getSteadyState(stayInJail);
+			double[] actual = iterative.getSteadyState(stayInJail);
+			for (int i = 0; i < expected.length; i++)
+				assertEquals(expected[i], actual[i], TOLERANCE);
+		}
+	}
+	
+	@Test
+	public void oversizedTableIsRejected() {
+		//43 * 43 * 2,000,000 probabilities is past Integer.MAX_VALUE, which used to wrap around to a negative size
+		int depth = 2_000_000;
+		StubBoard stub = new StubBoard(40);
+		ProbabilityCalculator calc = new ProbabilityCalculator(stub);
+		assertThrows(IllegalArgumentException.class, () -> calc.getTable(depth, false));
+		assertThrows(IllegalArgumentException.class, () -> new MonteCarloSimulator(stub, 1L).simulate(depth, 2, 2));
+	}
+	
+	/*
+	 * The move tree walk as it was before memoization: every roll of the dice is followed
+	 * to the end of the turn, one ordered roll and one card at a time.
+	 */
+	private static final class BaselineWalk {
+		private final Board board;
+		private final int size;
+		private final double[] midProb;
+		private final double[] endProb;
+		
+		BaselineWalk(Board board) {
+			this.board = board;
+			size = board.physicalSize() + board.maxTurnsInJail();
+			midProb = new double[size];
+			endProb = new double[size];
+		}
+		
+		void getProbFrom(int start, boolean stayInJail) {
+			if (start < board.physicalSize()) {
+				if (board.getSpace(start).type() != SpaceType.GOTO)
+					doRolls(start, 0, 1);
+				return;
+			}
+			int justVisiting = board.jail().justVisiting().ID();
+			if (!stayInJail) {
+				doRolls(justVisiting, 0, 1);
+				return;
+			}
+			boolean lastTurn = start == size - 1;
+			board.dice().forEachPossibleRoll((roll, rolls) -> {
+				if (roll.isDoubles() || lastTurn)
+					land((justVisiting + roll.getTotal()) % board.physicalSize(), roll.isDoubles() ? 1 : 0, 1.0 / rolls, false);
+				else
+					land(start + 1, 0, 1.0 / rolls, false);
+			});
+		}
+		
+		private void doRolls(int spaceID, int numDoubles, double multiplier) {
+			board.dice().forEachPossibleRoll((roll, rolls) -> {
+				boolean isDoubles = roll.isDoubles();
+				if (isDoubles && numDoubles >= Dice.maxDoubles() - 1)
+					land(board.jail().ID(), numDoubles, multiplier / rolls, false);
+				else
+					land((spaceID + roll.getTotal()) % board.physicalSize(), isDoubles ? numDoubles + 1 : numDoubles, multiplier / rolls, isDoubles);
+			});
+		}
+		
+		private void land(int spaceID, int numDoubles, double multiplier, boolean rollAgain) {
+			if (spaceID >= board.physicalSize()) {
+				endProb[spaceID] += multiplier;
+				return;
+			}
+			Space space = board.getSpace(spaceID);
+			if (space.type() == SpaceType.GOTO) {
+				midProb[spaceID] += multiplier;
+				land(board.jail().ID(), numDoubles, multiplier, false);
+			} else if (space.type() == SpaceType.CARD) {
+				CardSpace cardSpace = (CardSpace) space;
+				int cards = cardSpace.getDeck().size();
+				for (Card c : cardSpace.getDeck()) {
+					Space destination = c.applyCard(cardSpace);
+					if (destination.equals(space))
+						landOrdinary(spaceID, numDoubles, multiplier / cards, rollAgain);
+					else {
+						midProb[spaceID] += multiplier / cards;
+						land(destination.ID(), numDoubles, multiplier / cards, rollAgain);
+					}
+				}
+			} else
+				landOrdinary(spaceID, numDoubles, multiplier, rollAgain);
+		}
+		
+		private void landOrdinary(int spaceID, int numDoubles, double multiplier, boolean rollAgain) {
+			if (!rollAgain) {
+				endProb[spaceID] += multiplier;
+				return;
+			}
+			midProb[spaceID] += multiplier;
+			doRolls(spaceID, numDoubles, multiplier);
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.BitSet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks the bulk and cumulative queries of ProbabilityTable against loops of single lookups,
+ * on every kind of table storage, and that withChange only builds on tables it can line up with
+ */
+public class ProbabilityTableTest {
+	private static final int DEPTH = 8;
+	private static final double TOLERANCE = 1e-12;
+	private static final StubBoard BOARD = new StubBoard(40);
+	
+	@TempDir
+	Path directory;
+	
+	@Test
+	public void rowsMatchSingleLookups() throws IOException {
+		for (ProbabilityTable table : tables()) {
+			double[] row = new double[table.size()];
+			for (boolean stayInJail : new boolean[] { false, true })
+				for (int turn = 0; turn < DEPTH; turn++)
+					for (int origin = 0; origin < table.size(); origin++) {
+						table.getProbabilities(origin, turn, stayInJail, row);
+						for (int destination = 0; destination < table.size(); destination++)
+							assertEquals(table.getProbability(origin, destination, turn, stayInJail), row[destination], 0.0);
+					}
+		}
+	}
+	
+	@Test
+	public void weightedSumsMatchSingleLookups() throws IOException {
+		double[] weights = new double[BOARD.physicalSize() + BOARD.maxTurnsInJail()];
+		for (int i = 0; i < weights.length; i++)
+			weights[i] = (i * 37) % 11 - 3;
+		for (ProbabilityTable table : tables()) {
+			for (boolean stayInJail : new boolean[] { false, true })
+				for (int origin = 0; origin < table.size(); origin++)
+					for (int firstTurn = 0; firstTurn < DEPTH; firstTurn += 3) {
+						double expected = 0;
+						for (int turn = firstTurn; turn < DEPTH; turn++)
+							for (int destination = 0; destination < table.size(); destination++)
+								expected += weights[destination] * table.getProbability(origin, destination, turn, stayInJail);
+						assertEquals(expected, table.getWeightedSum(origin, weights, firstTurn, DEPTH, stayInJail), TOLERANCE);
+					}
+		}
+	}
+	
+	@Test
+	public void expectedLandingsMatchSingleLookups() throws IOException {
+		BitSet destinations = new BitSet();
+		for (int id : new int[] { 1, 3, 10, 30, 39, 40, 42 })
+			destinations.set(id);
+		for (ProbabilityTable table : tables()) {
+			for (boolean stayInJail : new boolean[] { false, true })
+				for (int turn = 0; turn < DEPTH; turn++)
+					for (int origin = 0; origin < table.size(); origin++) {
+						double expected = 0;
+						for (int d = destinations.nextSetBit(0); d >= 0; d = destinations.nextSetBit(d + 1))
+							expected += table.getProbability(origin, d, turn, stayInJail);
+						assertEquals(expected, table.getExpectedLandings(origin, destinations, turn, stayInJail), TOLERANCE);
+					}
+		}
+	}
+	
+	@Test
+	public void expectedVisitsMatchExplicitSums() throws IOException {
+		for (ProbabilityTable table : tables()) {
+			for (boolean stayInJail : new boolean[] { false, true })
+				for (int origin = 0; origin < table.size(); origin += 3)
+					for (int destination = 0; destination < table.size(); destination++)
+						for (int firstTurn = 0; firstTurn <= DEPTH; firstTurn++)
+							for (int lastTurn = firstTurn; lastTurn <= DEPTH; lastTurn++) {
+								double expected = 0;
+								for (int turn = firstTurn; turn < lastTurn; turn++)
+									expected += table.getProbability(origin, destination, turn, stayInJail);
+								assertEquals(expected, table.getExpectedVisits(origin, destination, firstTurn, lastTurn, stayInJail), TOLERANCE);
+							}
+		}
+	}
+	
+	@Test
+	public void expectedVisitsPastTheTableAreRejected() {
+		ProbabilityTable table = ProbabilityTable.makeTable(BOARD, DEPTH);
+		assertThrows(IllegalArgumentException.class, () -> table.getExpectedVisits(0, 0, 0, DEPTH + 1, false));
+		assertThrows(IllegalArgumentException.class, () -> table.getExpectedVisits(0, 0, -1, 1, false));
+	}
+	
+	@Test
+	public void withChangeToDifferentSplitBuildsInFull() {
+		//43 states either way, but the jail rows of one are spaces of the other
+		ProbabilityTable table = ProbabilityTable.makeTable(BOARD, DEPTH);
+		StubBoard variant = new StubBoard(41, 2);
+		ProbabilityTable expected = ProbabilityTable.makeTable(variant, DEPTH);
+		ProbabilityTable actual = table.withChange(variant, BoardChange.spaces(40), DEPTH, new DenseSteadyStateSolver());
+		for (boolean stayInJail : new boolean[] { false, true }) {
+			for (int d = 0; d < expected.size(); d++)
+				assertEquals(expected.getSteadyState(d, stayInJail), actual.getSteadyState(d, stayInJail), TOLERANCE);
+			for (int turn = 0; turn < DEPTH; turn++)
+				for (int o = 0; o < expected.size(); o++)
+					for (int d = 0; d < expected.size(); d++)
+						assertEquals(expected.getProbability(o, d, turn, stayInJail), actual.getProbability(o, d, turn, stayInJail), TOLERANCE);
+		}
+		BitSet changed = new BitSet();
+		changed.set(40);
+		assertThrows(IllegalArgumentException.class, () -> new ProbabilityCalculator(variant, null, table, changed));
+	}
+	
+	@Test
+	public void withChangeOnOtherModelsIsRejected() {
+		ProbabilityTable deckState = ProbabilityTable.makeDeckStateTable(new StubBoard(40, true, 2), DEPTH, null);
+		ProbabilityTable estimated = new MonteCarloSimulator(BOARD, 1L).simulate(DEPTH, 100, 10).toTable();
+		for (ProbabilityTable table : new ProbabilityTable[] { deckState, estimated }) {
+			assertThrows(IllegalStateException.class, () -> table.withChange(BOARD, BoardChange.spaces(30), DEPTH));
+			assertThrows(IllegalStateException.class, () -> table.withChange(BOARD, BoardChange.everything(), DEPTH));
+		}
+	}
+	
+	// a table of each storage: double, float, lazy and memory-mapped
+	private ProbabilityTable[] tables() throws IOException {
+		ProbabilityTable table = ProbabilityTable.makeTable(BOARD, DEPTH);
+		Path path = directory.resolve("table.snapshot");
+		table.save(path);
+		return new ProbabilityTable[] { table, ProbabilityTable.makeTable(BOARD, DEPTH, TablePrecision.FLOAT), ProbabilityTable.makeLazyTable(BOARD),
+				ProbabilityTable.load(path) };
+	}
+}
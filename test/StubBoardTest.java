@@ -0,0 +1,35 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the stub board's movement cards move forward, wrapping past Go
+ */
+public class StubBoardTest {
+
+	@Test
+	public void nearestRailroadMovesForward() {
+		StubBoard board = new StubBoard(40);
+		assertEquals(15, board.nearestRailroad(7));
+		assertEquals(25, board.nearestRailroad(22));
+		assertEquals(5, board.nearestRailroad(36));
+		
+		StubBoard extended = new StubBoard(80);
+		assertEquals(45, extended.nearestRailroad(36));
+		assertEquals(5, extended.nearestRailroad(76));
+	}
+	
+	@Test
+	public void nearestUtilityMovesForward() {
+		StubBoard board = new StubBoard(40);
+		assertEquals(12, board.nearestUtility(7));
+		assertEquals(28, board.nearestUtility(22));
+		assertEquals(12, board.nearestUtility(36));
+		
+		StubBoard extended = new StubBoard(80);
+		assertEquals(52, extended.nearestUtility(36));
+		assertEquals(12, extended.nearestUtility(76));
+	}
+}
@@ -0,0 +1,91 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.benpochily.monopoly.board.Board;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that tables built incrementally by a TableBatchBuilder match full builds, that identical
+ * variants share one table and that boards are taken no faster than tables are handed over
+ */
+public class TableBatchBuilderTest {
+	private static final int DEPTH = 8;
+	private static final double TOLERANCE = 1e-10;
+
+	@Test
+	public void goToJailBecomesOrdinary() throws IOException {
+		checkIncremental(new StubBoard(40, true), new StubBoard(40, false));
+	}
+	
+	@Test
+	public void ordinaryBecomesGoToJail() throws IOException {
+		checkIncremental(new StubBoard(40, false), new StubBoard(40, true));
+	}
+	
+	@Test
+	public void identicalVariantsInFlightBuildOnce() throws IOException {
+		TableBatchBuilder builder = new TableBatchBuilder(DEPTH, TablePrecision.DOUBLE, 4, 8);
+		Map<Long, ProbabilityTable> tables = new HashMap<Long, ProbabilityTable>();
+		builder.build(Collections.nCopies(8, new StubBoard(40)).iterator(), TableSink.toMap(tables));
+		assertEquals(1, builder.full());
+		assertEquals(7, builder.reused());
+		for (ProbabilityTable table : tables.values())
+			assertSame(tables.get(0L), table);
+	}
+	
+	@Test
+	public void boardsAreTakenOnlyWithRoom() throws IOException {
+		int maxInFlight = 2;
+		AtomicLong delivered = new AtomicLong();
+		Iterator<StubBoard> boards = Arrays.asList(new StubBoard(40, true), new StubBoard(40, false), 
+				new StubBoard(80, true), new StubBoard(80, false), new StubBoard(40, true, 4)).iterator();
+		AtomicLong taken = new AtomicLong();
+		Iterator<Board> counted = new Iterator<Board>() {
+			@Override
+			public boolean hasNext() {
+				return boards.hasNext();
+			}
+			
+			@Override
+			public Board next() {
+				assertTrue(taken.get() - delivered.get() < maxInFlight);
+				taken.incrementAndGet();
+				return boards.next();
+			}
+		};
+		TableBatchBuilder builder = new TableBatchBuilder(DEPTH, TablePrecision.DOUBLE, 1, maxInFlight);
+		assertEquals(5, builder.build(counted, (index, board, table) -> delivered.incrementAndGet()));
+		assertEquals(5, delivered.get());
+	}
+	
+	// builds base and then variant on one thread, so variant is built incrementally from base
+	private static void checkIncremental(StubBoard base, StubBoard variant) throws IOException {
+		TableBatchBuilder builder = new TableBatchBuilder(DEPTH, TablePrecision.DOUBLE, 1, 2);
+		Map<Long, ProbabilityTable> tables = new HashMap<Long, ProbabilityTable>();
+		builder.build(Arrays.asList(base, variant).iterator(), TableSink.toMap(tables));
+		assertEquals(1, builder.incremental());
+		
+		ProbabilityTable expected = ProbabilityTable.makeTable(variant, DEPTH);
+		ProbabilityTable actual = tables.get(1L);
+		for (boolean stayInJail : new boolean[] { false, true }) {
+			for (int d = 0; d < expected.size(); d++)
+				assertEquals(expected.getSteadyState(d, stayInJail), actual.getSteadyState(d, stayInJail), TOLERANCE);
+			for (int turn = 0; turn < DEPTH; turn++)
+				for (int o = 0; o < expected.size(); o++)
+					for (int d = 0; d < expected.size(); d++)
+						assertEquals(expected.getProbability(o, d, turn, stayInJail), actual.getProbability(o, d, turn, stayInJail), TOLERANCE);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that snapshots load back as the tables they were saved from, and that corrupt
+ * snapshots are rejected with an IOException
+ */
+public class TableSnapshotTest {
+	private static final int DEPTH = 6;
+	private static final double TOLERANCE = 1e-12;
+	private static final StubBoard BOARD = new StubBoard(40);
+	
+	@TempDir
+	Path directory;
+	
+	@Test
+	public void roundTrip() throws IOException {
+		for (TablePrecision precision : TablePrecision.values()) {
+			ProbabilityTable table = ProbabilityTable.makeTable(BOARD, DEPTH, precision);
+			Path path = directory.resolve(precision + ".snapshot");
+			table.save(path);
+			assertTablesEqual(table, ProbabilityTable.load(path), 0.0);
+		}
+	}
+	
+	@Test
+	public void withChangeOnLoadedTable() throws IOException {
+		ProbabilityTable table = ProbabilityTable.makeTable(BOARD, DEPTH);
+		Path path = directory.resolve("table.snapshot");
+		table.save(path);
+		ProbabilityTable loaded = ProbabilityTable.load(path);
+		
+		StubBoard variant = new StubBoard(40, false);
+		BoardChange change = BoardChange.spaces(30);
+		assertTablesEqual(table.withChange(variant, change, DEPTH), loaded.withChange(variant, change, DEPTH), TOLERANCE);
+	}
+	
+	@Test
+	public void saveMakesNoLookups() throws IOException {
+		LongAdder lookups = new LongAdder();
+		ProbabilityTableListener listener = new ProbabilityTableListener() {
+			@Override
+			public void lookup() {
+				lookups.increment();
+			}
+		};
+		ProbabilityTable.makeTable(BOARD, DEPTH, TablePrecision.DOUBLE, null, listener).save(directory.resolve("table.snapshot"));
+		assertEquals(0, lookups.sum());
+	}
+	
+	@Test
+	public void loadedTableKeepsModel() throws IOException {
+		Path path = directory.resolve("deck.snapshot");
+		ProbabilityTable.makeDeckStateTable(new StubBoard(40, true, 2), DEPTH, null).save(path);
+		ProbabilityTable loaded = ProbabilityTable.load(path);
+		assertEquals(TableModel.DECK_STATE, loaded.model());
+		assertThrows(IllegalStateException.class, () -> loaded.withChange(BOARD, BoardChange.spaces(30), DEPTH));
+	}
+	
+	@Test
+	public void flippedByteFailsChecksum() throws IOException {
+		byte[] bytes = saved();
+		bytes[bytes.length / 2] ^= 1;
+		assertThrows(IOException.class, () -> load(bytes));
+	}
+	
+	@Test
+	public void invalidHeadersAreRejected() throws IOException {
+		int n = BOARD.physicalSize() + BOARD.maxTurnsInJail();
+		int markovStart = 9 * Integer.BYTES + n * Double.BYTES;
+		//each corruption is given a valid checksum, so only the header checks can catch it
+		int[][] corruptions = {
+				{ 2 * Integer.BYTES, -1 }, //board size
+				{ 2 * Integer.BYTES, Integer.MAX_VALUE },
+				{ 3 * Integer.BYTES, TablePrecision.values().length }, //precision
+				{ 4 * Integer.BYTES, 41 }, //physical spaces
+				{ 5 * Integer.BYTES, -1 }, //turns in jail
+				{ 6 * Integer.BYTES, TableModel.values().length }, //model
+				{ 7 * Integer.BYTES, -1 }, //depth
+				{ 7 * Integer.BYTES, Integer.MAX_VALUE },
+				{ 8 * Integer.BYTES, 7 }, //mid matrix flag
+				{ markovStart, -1 }, //sparse matrix size
+				{ markovStart, n + 1 },
+				{ markovStart + Integer.BYTES, Integer.MAX_VALUE }, //sparse matrix nonzeros
+				{ markovStart + 3 * Integer.BYTES, -5 }, //a row start
+		};
+		for (int[] corruption : corruptions) {
+			byte[] bytes = saved();
+			ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(corruption[0], corruption[1]);
+			assertThrows(IOException.class, () -> load(withChecksum(bytes)), "offset " + corruption[0] + " = " + corruption[1]);
+		}
+	}
+	
+	@Test
+	public void truncatedFileIsRejected() throws IOException {
+		byte[] bytes = saved();
+		byte[] truncated = new byte[bytes.length / 3];
+		System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+		assertThrows(IOException.class, () -> load(withChecksum(truncated)));
+	}
+	
+	private byte[] saved() throws IOException {
+		Path path = directory.resolve("saved.snapshot");
+		ProbabilityTable.makeTable(BOARD, DEPTH).save(path);
+		return Files.readAllBytes(path);
+	}
+	
+	private ProbabilityTable load(byte[] bytes) throws IOException {
+		Path path = directory.resolve("corrupt.snapshot");
+		Files.write(path, bytes);
+		return ProbabilityTable.load(path);
+	}
+	
+	// replaces the checksum at the end of a snapshot with that of its contents
+	private static byte[] withChecksum(byte[] bytes) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, bytes.length - Long.BYTES);
+		ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putLong(bytes.length - Long.BYTES, crc.getValue());
+		return bytes;
+	}
+	
+	private static void assertTablesEqual(ProbabilityTable expected, ProbabilityTable actual, double tolerance) {
+		assertEquals(expected.size(), actual.size());
+		for (boolean stayInJail : new boolean[] { false, true }) {
+			for (int d = 0; d < expected.size(); d++)
+				assertEquals(expected.getSteadyState(d, stayInJail), actual.getSteadyState(d, stayInJail), tolerance);
+			for (int turn = 0; turn < DEPTH; turn++)
+				for (int o = 0; o < expected.size(); o++)
+					for (int d = 0; d < expected.size(); d++)
+						assertEquals(expected.getProbability(o, d, turn, stayInJail), actual.getProbability(o, d, turn, stayInJail), tolerance);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package com.benpochily.monopoly.ai.heuristic.probability.probabilitytable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that compensated summation agrees with naive summation, and that validation passes
+ * correct tables and catches perturbed ones
+ */
+public class TableValidationTest {
+	private static final int DEPTH = 10;
+	private static final double TOLERANCE = 1e-12;
+	private static final double VALID = 1e-10;
+	private static final StubBoard BOARD = new StubBoard(40);
+	
+	@Test
+	public void compensatedMatchesNaive() {
+		ProbabilityTable naive = ProbabilityTable.makeTable(BOARD, DEPTH, TablePrecision.DOUBLE, null, ProbabilityTableListener.NONE, Summation.NAIVE);
+		ProbabilityTable compensated = ProbabilityTable.makeTable(BOARD, DEPTH, TablePrecision.DOUBLE, null, ProbabilityTableListener.NONE, 
+				Summation.COMPENSATED);
+		for (boolean stayInJail : new boolean[] { false, true }) {
+			for (int d = 0; d < naive.size(); d++)
+				assertEquals(naive.getSteadyState(d, stayInJail), compensated.getSteadyState(d, stayInJail), TOLERANCE);
+			for (int turn = 0; turn < DEPTH; turn++)
+				for (int o = 0; o < naive.size(); o++)
+					for (int d = 0; d < naive.size(); d++)
+						assertEquals(naive.getProbability(o, d, turn, stayInJail), compensated.getProbability(o, d, turn, stayInJail), TOLERANCE);
+		}
+		assertTrue(compensated.validate().isValid(VALID), compensated.validate().toString());
+	}
+	
+	@Test
+	public void correctTablesAreValid() {
+		for (TablePrecision precision : TablePrecision.values()) {
+			TableValidation validation = ProbabilityTable.makeTable(BOARD, DEPTH, precision).validate();
+			assertEquals(DEPTH, validation.depth());
+			assertTrue(validation.isValid(precision == TablePrecision.FLOAT ? 1e-5 : VALID), validation.toString());
+		}
+	}
+	
+	@Test
+	public void perturbedTurnIsRejected() {
+		ProbabilityCalculator calc = new ProbabilityCalculator(BOARD);
+		int n = calc.size();
+		double[] table = calc.getTable(DEPTH, false);
+		int turn = 4;
+		table[(turn * n + 5) * n + 12] += 1e-6;
+		ProbabilityTable perturbed = withStorage(calc, table, calc.getSparseMarkovMatrix(false));
+		
+		TableValidation validation = perturbed.validate();
+		assertFalse(validation.isValid(VALID));
+		for (int t = 0; t < turn; t++)
+			assertTrue(validation.getDrift(t, false) <= VALID);
+		assertTrue(validation.getDrift(turn, false) > VALID);
+		assertTrue(validation.getDrift(DEPTH - 1, true) <= VALID);
+	}
+	
+	@Test
+	public void perturbedMarkovRowIsRejected() {
+		ProbabilityCalculator calc = new ProbabilityCalculator(BOARD);
+		double[][] markov = calc.getMarkovMatrix(false);
+		double[][] perturbed = new double[markov.length][];
+		for (int i = 0; i < markov.length; i++)
+			perturbed[i] = markov[i].clone();
+		perturbed[7][8] += 1e-6;
+		
+		TableValidation validation = withStorage(calc, calc.getTable(DEPTH, false), SparseMatrix.fromDense(perturbed)).validate();
+		assertTrue(validation.getRowDrift(false) > VALID);
+		assertTrue(validation.getRowDrift(true) <= VALID);
+		assertFalse(validation.isValid(VALID));
+	}
+	
+	// a table of calc's probabilities, with the short jail stay's turns and Markov matrix replaced
+	private static ProbabilityTable withStorage(ProbabilityCalculator calc, double[] table, SparseMatrix markov) {
+		int n = calc.size();
+		return new ProbabilityTable(TableStorage.create(table, DEPTH, n, TablePrecision.DOUBLE), calc.getSteadyState(false), markov, 
+				calc.getSparseOneTurnMatrix(false), TableStorage.create(calc.getTable(DEPTH, true), DEPTH, n, TablePrecision.DOUBLE), 
+				calc.getSteadyState(true), calc.getSparseMarkovMatrix(true), calc.getSparseOneTurnMatrix(true), 
+				BOARD.physicalSize(), BOARD.maxTurnsInJail(), TableModel.EXACT, ProbabilityTableListener.NONE);
+	}
+}